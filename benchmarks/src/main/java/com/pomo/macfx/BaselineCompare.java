@@ -0,0 +1,323 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <h2>基线对比</h2>
+ * <p>读取两份JMH的JSON结果（基线与本次），逐项输出分数的变化；变差超过阈值、且超出两者误差之和的，标记为回退。</p>
+ * <p>存在回退时以状态码1退出，可用于持续集成。</p>
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.pomo.macfx.BaselineCompare baselines/&lt;机器名&gt;.json current.json [阈值%，默认10]
+ * </pre>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+public final class BaselineCompare {
+
+    private BaselineCompare() {
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 2) {
+            System.err.println("usage: BaselineCompare <baseline.json> <current.json> [threshold%]");
+            System.exit(2);
+        }
+
+        Map<String, Result> baseline = load(args[0]);
+        Map<String, Result> current = load(args[1]);
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) / 100 : 0.1;
+
+        int regressions = 0;
+
+        System.out.printf("%-48s %24s %24s %8s%n", "benchmark", "baseline", "current", "change");
+
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+
+            Result now = entry.getValue();
+            Result base = baseline.get(entry.getKey());
+
+            if (base == null) {
+                System.out.printf("%-48s %24s %24s %8s%n", entry.getKey(), "-", now, "new");
+                continue;
+            }
+
+            // 耗时类越小越好，吞吐量类越大越好
+            double change = (now.score - base.score) / base.score;
+            double worse = now.lowerIsBetter ? change : -change;
+
+            boolean regressed = worse > threshold
+                    && Math.abs(now.score - base.score) > now.error + base.error;
+
+            if (regressed) {
+                regressions++;
+            }
+
+            System.out.printf("%-48s %24s %24s %+7.1f%%%s%n",
+                    entry.getKey(), base, now, change * 100, regressed ? "  REGRESSION" : "");
+        }
+
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.printf("%-48s %24s %24s %8s%n", key, baseline.get(key), "-", "missing");
+            }
+        }
+
+        System.out.printf("%d regression(s), threshold %.0f%%%n", regressions, threshold * 100);
+
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 按“基准名 参数”为键，保持字典序
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Result> load(String file) throws IOException {
+
+        String json = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+
+        Map<String, Result> results = new TreeMap<>();
+
+        for (Object item : (List<Object>) new Parser(json).value()) {
+
+            Map<String, Object> run = (Map<String, Object>) item;
+            Map<String, Object> metric = (Map<String, Object>) run.get("primaryMetric");
+
+            String name = (String) run.get("benchmark");
+            name = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1);
+
+            Map<String, Object> params = (Map<String, Object>) run.get("params");
+            if (params != null) {
+                name += " " + params;
+            }
+
+            Object error = metric.get("scoreError");
+
+            results.put(name, new Result(
+                    ((Number) metric.get("score")).doubleValue(),
+                    error instanceof Number ? ((Number) error).doubleValue() : 0,
+                    (String) metric.get("scoreUnit"),
+                    !"thrpt".equals(run.get("mode"))
+            ));
+        }
+
+        return results;
+    }
+
+    private final static class Result {
+
+        private final double score;
+        private final double error;
+        private final String unit;
+        private final boolean lowerIsBetter;
+
+        private Result(double score, double error, String unit, boolean lowerIsBetter) {
+            this.score = score;
+            this.error = Double.isNaN(error) ? 0 : error;
+            this.unit = unit;
+            this.lowerIsBetter = lowerIsBetter;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.3f +- %.3f %s", score, error, unit);
+        }
+    }
+
+    /**
+     * 仅满足JMH结果所需的JSON解析：对象、数组、字符串、数字、true/false/null
+     */
+    private final static class Parser {
+
+        private final String text;
+        private int position;
+
+        private Parser(String text) {
+            this.text = text;
+        }
+
+        private Object value() {
+
+            skipSpace();
+
+            char c = text.charAt(position);
+
+            switch (c) {
+                case '{':
+                    return object();
+                case '[':
+                    return array();
+                case '"':
+                    return string();
+                default:
+                    return literal();
+            }
+        }
+
+        private Map<String, Object> object() {
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            position++;
+
+            skipSpace();
+            if (text.charAt(position) == '}') {
+                position++;
+                return map;
+            }
+
+            while (true) {
+
+                skipSpace();
+                String key = string();
+
+                skipSpace();
+                expect(':');
+
+                map.put(key, value());
+
+                skipSpace();
+                if (text.charAt(position++) == '}') {
+                    return map;
+                }
+            }
+        }
+
+        private List<Object> array() {
+
+            List<Object> list = new ArrayList<>();
+            position++;
+
+            skipSpace();
+            if (text.charAt(position) == ']') {
+                position++;
+                return list;
+            }
+
+            while (true) {
+
+                list.add(value());
+
+                skipSpace();
+                if (text.charAt(position++) == ']') {
+                    return list;
+                }
+            }
+        }
+
+        private String string() {
+
+            expect('"');
+
+            StringBuilder builder = new StringBuilder();
+
+            while (true) {
+
+                char c = text.charAt(position++);
+
+                if (c == '"') {
+                    return builder.toString();
+                }
+
+                if (c == '\\') {
+
+                    c = text.charAt(position++);
+
+                    switch (c) {
+                        case 'n':
+                            builder.append('\n');
+                            break;
+                        case 't':
+                            builder.append('\t');
+                            break;
+                        case 'r':
+                            builder.append('\r');
+                            break;
+                        case 'b':
+                            builder.append('\b');
+                            break;
+                        case 'f':
+                            builder.append('\f');
+                            break;
+                        case 'u':
+                            builder.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                            position += 4;
+                            break;
+                        default:
+                            builder.append(c);
+                            break;
+                    }
+
+                } else {
+
+                    builder.append(c);
+                }
+            }
+        }
+
+        private Object literal() {
+
+            int start = position;
+
+            while (position < text.length() && ",}] \t\r\n".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+
+            String token = text.substring(start, position);
+
+            switch (token) {
+                case "true":
+                    return Boolean.TRUE;
+                case "false":
+                    return Boolean.FALSE;
+                case "null":
+                    return null;
+                default:
+                    // 兼容裸写的NaN
+                    return "NaN".equals(token) ? Double.NaN : Double.valueOf(token);
+            }
+        }
+
+        private void expect(char c) {
+
+            if (text.charAt(position) != c) {
+                throw new IllegalArgumentException("expected '" + c + "' at " + position);
+            }
+
+            position++;
+        }
+
+        private void skipSpace() {
+            while (Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.scene.image.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h2>图片解码</h2>
+ * <p>图标：全尺寸解码、按Dock栏尺寸解码、读取磁盘缓存；壁纸：全尺寸解码、按1920x1080、默认窗口一半（683x433）所在档位解码、从分块金字塔读取。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+    private final static String ICON = "/com/pomo/macfx/img/1.jpg";
+    private final static String WALLPAPER = "/com/pomo/macfx/img/original/1.jpg";
+
+    private byte[] icon;
+    private int iconSize;
+
+    private Path cached;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+
+        FxSupport.start();
+
+        icon = MacDiskCache.readResource(ICON);
+        iconSize = (int) Math.ceil(MacDockItem.getMaxIconSize());
+
+        cached = Files.createTempFile("mac-fx-benchmark", ".bgra");
+        MacDiskCache.writeImage(cached, decodeIconAtSize());
+
+        MacTilePyramid.build(WALLPAPER);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(cached);
+    }
+
+    @Benchmark
+    public Image iconFull() {
+        return new Image(new ByteArrayInputStream(icon));
+    }
+
+    @Benchmark
+    public Image iconAtSize() {
+        return decodeIconAtSize();
+    }
+
+    @Benchmark
+    public Image iconFromDiskCache() throws IOException {
+        return MacDiskCache.readImage(cached);
+    }
+
+    @Benchmark
+    public Image wallpaperFull() {
+        return new Image(WALLPAPER);
+    }
+
+    @Benchmark
+    public Image wallpaperAtSize() {
+        return MacWallpapers.decodeImage(WALLPAPER, 2048, 1280);
+    }
+
+    @Benchmark
+    public Image wallpaperAtHalfSize() {
+        return MacWallpapers.decodeImage(WALLPAPER, 768, 512);
+    }
+
+    @Benchmark
+    public Image wallpaperFromPyramid() {
+        return MacWallpapers.decode(WALLPAPER, 2048, 1280);
+    }
+
+    private Image decodeIconAtSize() {
+        return new Image(new ByteArrayInputStream(icon), iconSize, iconSize, true, true);
+    }
+}
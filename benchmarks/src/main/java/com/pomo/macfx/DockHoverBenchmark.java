@@ -0,0 +1,118 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.scene.image.WritableImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h2>Dock栏悬停计算</h2>
+ * <p>调用MacDock鼠标移动时所用的{@link MacDockPane#hover(double, double, double)}：二分查找视距内的子项，逐个设置放大等级；鼠标每次调用向右移动一段距离。</p>
+ * <p>{@link #hoverLayout()}另外完成随后的一次布局，即每个脉冲实际的开销。容器未加入场景，可在当前线程中修改；子项超出屏幕所能容纳的数量时，只计显示中的。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DockHoverBenchmark {
+
+    @Param({"10", "50", "200"})
+    private int items;
+
+    private MacDockPane container;
+
+    private double width;
+    private double y;
+
+    private double x;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        container = FxSupport.call(() -> {
+
+            MacBackground macBackground = new MacBackground(
+                    Collections.singletonList("/com/pomo/macfx/img/1.jpg"), "/com/pomo/macfx/img/1.jpg");
+
+            List<MacDockItem> list = new ArrayList<>(items);
+            for (int i = 0; i < items; i++) {
+                list.add(new MacDockItem(macBackground, new ReadOnlyObjectWrapper<>(new WritableImage(1, 1)),
+                        "benchmark-" + i, source -> null));
+            }
+
+            MacDockPane container = new MacDockPane(new MacDockIndex());
+            container.setItems(list);
+
+            container.resize(container.prefWidth(-1), container.prefHeight(-1));
+            container.layout();
+
+            return container;
+        });
+
+        width = container.getWidth();
+        y = container.getHeight() / 2;
+    }
+
+    @Benchmark
+    public int hover() {
+
+        return container.hover(next(), y, 0.8);
+    }
+
+    @Benchmark
+    public int hoverLayout() {
+
+        int selected = container.hover(next(), y, 0.8);
+
+        container.resize(container.prefWidth(-1), container.prefHeight(-1));
+        container.layout();
+
+        return selected;
+    }
+
+    private double next() {
+
+        x += 7;
+        if (x >= width) {
+            x -= width;
+        }
+
+        return x;
+    }
+}
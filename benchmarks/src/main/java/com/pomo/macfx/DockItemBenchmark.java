@@ -0,0 +1,91 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.scene.image.WritableImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h2>Dock栏子项放大</h2>
+ * <p>按等级设置子项的缩放与倒影，并计算其占位尺寸；子项未加入场景，可在当前线程中修改。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DockItemBenchmark {
+
+    private MacDockItem item;
+
+    private int level;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        item = FxSupport.call(() -> {
+
+            MacBackground macBackground = new MacBackground(
+                    Collections.singletonList("/com/pomo/macfx/img/1.jpg"), "/com/pomo/macfx/img/1.jpg");
+
+            MacDockItem item = new MacDockItem(macBackground, new ReadOnlyObjectWrapper<>(new WritableImage(1, 1)),
+                    "benchmark", source -> null);
+
+            // 未显示的子项不持有图标节点
+            item.realize();
+
+            return item;
+        });
+    }
+
+    @Benchmark
+    public double setLevel() {
+
+        // 每次都是不同的等级，避免命中“未变化”的捷径
+        level = (level + 37) % (MacDockItem.LEVELS + 1);
+
+        item.setLevel(level);
+
+        return item.getSlotWidth(level) + item.getSlotHeight(level);
+    }
+
+    @Benchmark
+    public int toLevel() {
+
+        level = (level + 37) % (MacDockItem.LEVELS + 1);
+
+        return MacDockItem.toLevel((double) level / MacDockItem.LEVELS);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import com.sun.javafx.application.PlatformImpl;
+import javafx.application.Platform;
+import javafx.embed.swing.JFXPanel;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * <h2>FX运行环境</h2>
+ * <p>基准测试没有Application，借助JFXPanel启动FX工具包；指定了Monocle平台（无界面的机器）时，不依赖AWT，直接启动。</p>
+ * <p>需要在FX线程中执行的操作，经由{@link #call(Callable)}同步执行。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class FxSupport {
+
+    private static boolean started;
+
+    private FxSupport() {
+    }
+
+    public static synchronized void start() {
+
+        if (started) {
+            return;
+        }
+
+        if ("Monocle".equals(System.getProperty("glass.platform"))) {
+
+            CountDownLatch latch = new CountDownLatch(1);
+            PlatformImpl.startup(latch::countDown);
+
+            try {
+
+                latch.await();
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+
+        } else {
+
+            new JFXPanel();
+        }
+
+        Platform.setImplicitExit(false);
+
+        started = true;
+    }
+
+    /**
+     * 在FX线程中执行，并等待结果
+     */
+    public static <T> T call(Callable<T> callable) {
+
+        start();
+
+        FutureTask<T> task = new FutureTask<>(callable);
+        Platform.runLater(task);
+
+        try {
+
+            return task.get();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+
+        } catch (ExecutionException e) {
+
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
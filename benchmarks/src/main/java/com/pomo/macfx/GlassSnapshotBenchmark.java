@@ -0,0 +1,113 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Scene;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.BackgroundImage;
+import javafx.scene.layout.BackgroundPosition;
+import javafx.scene.layout.BackgroundRepeat;
+import javafx.scene.layout.BackgroundSize;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.ImagePattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h2>玻璃板截图</h2>
+ * <p>截取壁纸中Dock栏所在的区域，并作为填充：每次新建图片与填充（优化前的做法），与复用预分配的图片（MacDockGlass的做法）的对比。</p>
+ * <p>截图必须在FX线程中进行，结果中包含切换线程的固定开销。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GlassSnapshotBenchmark {
+
+    private final static double DOCK_HEIGHT = 90;
+
+    @Param({"400", "800", "1400"})
+    private int dockWidth;
+
+    private Region bg;
+
+    private SnapshotParameters parameters;
+
+    private WritableImage image;
+    private ImagePattern pattern;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        FxSupport.call(() -> {
+
+            Image wallpaper = new Image("/com/pomo/macfx/img/original/1.jpg", 1920, 1080, false, true);
+
+            bg = new Region();
+            bg.setBackground(new Background(new BackgroundImage(wallpaper,
+                    BackgroundRepeat.NO_REPEAT, BackgroundRepeat.NO_REPEAT, BackgroundPosition.CENTER,
+                    new BackgroundSize(BackgroundSize.AUTO, BackgroundSize.AUTO, true, true, false, true))));
+
+            new Scene(bg, 1920, 1080);
+            bg.applyCss();
+            bg.resize(1920, 1080);
+
+            parameters = new SnapshotParameters();
+            parameters.setFill(null);
+            parameters.setViewport(new Rectangle2D((1920 - dockWidth) / 2.0, 1080 - DOCK_HEIGHT, dockWidth, DOCK_HEIGHT));
+
+            image = new WritableImage(dockWidth, (int) DOCK_HEIGHT);
+            pattern = new ImagePattern(image);
+
+            return null;
+        });
+    }
+
+    @Benchmark
+    public ImagePattern allocate() {
+        return FxSupport.call(() -> new ImagePattern(bg.snapshot(parameters, null)));
+    }
+
+    @Benchmark
+    public ImagePattern reuse() {
+        return FxSupport.call(() -> {
+            bg.snapshot(parameters, image);
+            return pattern;
+        });
+    }
+}
@@ -0,0 +1,539 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.geometry.Bounds;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.Labeled;
+import javafx.scene.input.MouseButton;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * <h2>场景测试</h2>
+ * <p>在无界面的Monocle平台上以软件管线启动桌面，依次模拟若干真实的操作，逐帧记录帧间隔与FX线程的内存分配量，输出为CSV。</p>
+ * <p>鼠标事件经由Robot注入，与真实的输入一样由场景拾取目标并跟踪悬停；帧由本类的AnimationTimer持续驱动，各次运行的条件一致。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+public class ScenarioRunner {
+
+    // 足够记录约半小时的帧
+    private final static int CAPACITY = 1 << 17;
+
+    private final static String[] SCENARIOS = {
+            "dock-sweep",
+            "open-windows",
+            "drag-window",
+            "minimize-recover",
+            "change-wallpaper"
+    };
+
+    private final static long FRAME_MILLIS = 16;
+
+    private static Path output;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // 仅在FX线程中写入，预先分配，记录本身不产生垃圾
+    private final int[] scenarioColumn = new int[CAPACITY];
+    private final long[] timeColumn = new long[CAPACITY];
+    private final long[] intervalColumn = new long[CAPACITY];
+    private final long[] allocationColumn = new long[CAPACITY];
+    private int count;
+
+    private volatile int scenario = -1;
+
+    private long start;
+    private long lastFrame;
+    private long lastAllocated;
+
+    private Scene scene;
+
+    private Mouse mouse;
+
+    public static void main(String[] args) {
+
+        output = Paths.get(args.length > 0 ? args[0] : "scenarios.csv");
+
+        // 须在FX工具包初始化之前设置
+        setDefault("glass.platform", "Monocle");
+        setDefault("monocle.platform", "Headless");
+        setDefault("headless.geometry", "1366x866-32");
+        setDefault("prism.order", "sw");
+        setDefault("prism.text", "t2k");
+
+        // 与基准测试一样直接启动FX工具包：JDK 11起，启动器拒绝以classpath上的Application子类为主类
+        FxSupport.call(() -> {
+            new ScenarioRunner().start(new Stage());
+            return null;
+        });
+    }
+
+    private void start(Stage stage) throws ReflectiveOperationException {
+
+        new MacOSApp().start(stage);
+        scene = stage.getScene();
+
+        mouse = new Mouse();
+
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                sample(now);
+            }
+        }.start();
+
+        Thread thread = new Thread(this::runAll, "mac-fx-scenario");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // region {采样}
+    private void sample(long now) {
+
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        int current = scenario;
+
+        if (current >= 0 && lastFrame != 0 && count < CAPACITY) {
+
+            scenarioColumn[count] = current;
+            timeColumn[count] = now - start;
+            intervalColumn[count] = now - lastFrame;
+            allocationColumn[count] = allocated - lastAllocated;
+            count++;
+        }
+
+        lastFrame = now;
+        lastAllocated = allocated;
+    }
+
+    private void begin(int index) {
+        fx(() -> {
+            start = lastFrame;
+            scenario = index;
+            return null;
+        });
+    }
+
+    private void end() {
+        scenario = -1;
+    }
+    // endregion
+
+    private void runAll() {
+
+        try {
+
+            // 等待首帧、图标加载
+            sleep(3000);
+
+            for (int i = 0; i < SCENARIOS.length; i++) {
+
+                begin(i);
+
+                switch (i) {
+                    case 0:
+                        dockSweep();
+                        break;
+                    case 1:
+                        openWindows();
+                        break;
+                    case 2:
+                        dragWindow();
+                        break;
+                    case 3:
+                        minimizeAndRecover();
+                        break;
+                    default:
+                        changeWallpaper();
+                        break;
+                }
+
+                end();
+
+                // 让上一场景的动画结束
+                sleep(1000);
+            }
+
+            write();
+
+        } catch (Exception e) {
+
+            e.printStackTrace();
+
+        } finally {
+
+            Platform.exit();
+        }
+    }
+
+    // region {场景}
+
+    /**
+     * 鼠标沿Dock栏来回扫过三次，最后移出Dock栏
+     */
+    private void dockSweep() {
+
+        Bounds bounds = screenBounds(lookup(".dock .container"));
+
+        double y = bounds.getMinY() + bounds.getHeight() * 0.6;
+        int steps = 120;
+
+        for (int pass = 0; pass < 3; pass++) {
+            for (int i = 0; i <= steps; i++) {
+
+                double t = (double) i / steps;
+                double x = bounds.getMinX() + bounds.getWidth() * (pass % 2 == 0 ? t : 1 - t);
+
+                mouse.move(x, y);
+                sleep(FRAME_MILLIS);
+            }
+        }
+
+        mouse.move(bounds.getMinX() + bounds.getWidth() / 2, bounds.getMinY() - 300);
+    }
+
+    /**
+     * 依次打开每个图片窗口，等待打开动画结束
+     */
+    private void openWindows() {
+
+        List<Node> items = lookupAll(".dock-item");
+
+        // 最后一个是设置
+        for (int i = 0; i < items.size() - 1; i++) {
+            click(items.get(i));
+            sleep(1800);
+        }
+    }
+
+    /**
+     * 拖着最上层的窗口画圆，持续5秒
+     */
+    private void dragWindow() {
+
+        Bounds bounds = screenBounds(topWindow().lookup(".title-bar"));
+
+        double x = bounds.getMinX() + bounds.getWidth() / 2;
+        double y = bounds.getMinY() + bounds.getHeight() / 2;
+
+        mouse.move(x, y);
+        mouse.press();
+
+        long frames = 5000 / FRAME_MILLIS;
+        for (int i = 1; i <= frames; i++) {
+
+            double angle = Math.PI * 2 * i / frames;
+
+            mouse.move(x + Math.sin(angle) * 200, y + (1 - Math.cos(angle)) * 100);
+            sleep(FRAME_MILLIS);
+        }
+
+        mouse.release();
+    }
+
+    /**
+     * 最小化最上层的窗口，再点击该窗口在Dock栏中的子项恢复，重复三次
+     */
+    private void minimizeAndRecover() {
+
+        Node item = dockItemOf(topWindow());
+
+        for (int i = 0; i < 3; i++) {
+
+            click(topWindow().lookup(".minimize"));
+            sleep(1000);
+
+            click(item);
+            sleep(1000);
+        }
+    }
+
+    /**
+     * 在每个图片窗口中应用背景：先点击标题栏将其置顶，再点击其中的按钮
+     */
+    private void changeWallpaper() {
+
+        for (Node window : lookupAll(".window")) {
+
+            if (window.lookup(".image-content") == null) {
+                continue;
+            }
+
+            click(window.lookup(".title-bar"));
+            sleep(300);
+
+            click(window.lookup(".image-content .button"));
+            sleep(1500);
+        }
+    }
+    // endregion
+
+    // region {工具}
+    private Node lookup(String selector) {
+        return fx(() -> scene.getRoot().lookup(selector));
+    }
+
+    private List<Node> lookupAll(String selector) {
+        return fx(() -> new ArrayList<>(scene.getRoot().lookupAll(selector)));
+    }
+
+    private Node topWindow() {
+
+        List<Node> windows = lookupAll(".window");
+
+        return windows.get(windows.size() - 1);
+    }
+
+    /**
+     * 窗口对应的Dock栏子项，以窗口标题匹配子项的名称
+     */
+    private Node dockItemOf(Node window) {
+
+        String title = fx(() -> ((Labeled) window.lookup(".title")).getText());
+
+        for (Node item : lookupAll(".dock-item")) {
+            if (title.equals(fx(item::getAccessibleText))) {
+                return item;
+            }
+        }
+
+        throw new IllegalStateException("no dock item for window: " + title);
+    }
+
+    private static Bounds screenBounds(Node node) {
+        return fx(() -> node.localToScreen(node.getBoundsInLocal()));
+    }
+
+    private void click(Node node) {
+
+        Bounds bounds = screenBounds(node);
+
+        mouse.move(bounds.getMinX() + bounds.getWidth() / 2, bounds.getMinY() + bounds.getHeight() / 2);
+        mouse.press();
+        mouse.release();
+    }
+
+    /**
+     * 在FX线程中执行，并等待结果
+     */
+    private static <T> T fx(Callable<T> callable) {
+
+        FutureTask<T> task = new FutureTask<>(callable);
+        Platform.runLater(task);
+
+        try {
+
+            return task.get();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+
+        } catch (ExecutionException e) {
+
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void sleep(long millis) {
+
+        try {
+
+            Thread.sleep(millis);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void setDefault(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+    // endregion
+
+    // region {输出}
+    private void write() throws IOException {
+
+        int total = fx(() -> count);
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+
+            writer.println("scenario,frame,time_ms,frame_ms,allocated_bytes");
+
+            int frame = 0;
+            for (int i = 0; i < total; i++) {
+
+                frame = i > 0 && scenarioColumn[i] == scenarioColumn[i - 1] ? frame + 1 : 0;
+
+                writer.printf("%s,%d,%.3f,%.3f,%d%n",
+                        SCENARIOS[scenarioColumn[i]], frame,
+                        timeColumn[i] / 1e6, intervalColumn[i] / 1e6, allocationColumn[i]);
+            }
+        }
+
+        for (int s = 0; s < SCENARIOS.length; s++) {
+            summarize(s, total);
+        }
+
+        System.out.println("CSV: " + output.toAbsolutePath());
+    }
+
+    /**
+     * 每个场景一行摘要：帧数、帧间隔分位数、内存分配速率
+     */
+    private void summarize(int index, int total) {
+
+        long[] intervals = new long[total];
+        int frames = 0;
+        long allocated = 0;
+        long duration = 0;
+
+        for (int i = 0; i < total; i++) {
+            if (scenarioColumn[i] == index) {
+                intervals[frames++] = intervalColumn[i];
+                allocated += allocationColumn[i];
+                duration += intervalColumn[i];
+            }
+        }
+
+        if (frames == 0) {
+            System.out.printf("%-18s no frames%n", SCENARIOS[index]);
+            return;
+        }
+
+        Arrays.sort(intervals, 0, frames);
+
+        System.out.printf("%-18s frames=%5d  p50=%6.2fms  p95=%6.2fms  p99=%6.2fms  alloc=%7.2fMB/s%n",
+                SCENARIOS[index], frames,
+                percentile(intervals, frames, 0.5),
+                percentile(intervals, frames, 0.95),
+                percentile(intervals, frames, 0.99),
+                allocated / (duration / 1e9) / (1 << 20));
+    }
+
+    private static double percentile(long[] sorted, int size, double p) {
+
+        int index = Math.max(0, Math.min(size - 1, (int) Math.ceil(p * size) - 1));
+
+        return sorted[index] / 1e6;
+    }
+    // endregion
+
+    /**
+     * <h2>鼠标</h2>
+     * <p>经由Glass的Robot注入鼠标事件，在Monocle上与真实的输入走同一条路径，由场景完成拾取、悬停、进出与拖动的跟踪。</p>
+     * <p>JavaFX 11起为公开的javafx.scene.robot.Robot，此前为com.sun.glass.ui.Robot，以反射兼容两者；坐标均为屏幕坐标。</p>
+     */
+    private final static class Mouse {
+
+        private final Object robot;
+
+        private final Method move;
+        private final Method press;
+        private final Method release;
+
+        // 主键
+        private final Object button;
+
+        // 须在FX线程中创建
+        private Mouse() throws ReflectiveOperationException {
+
+            if (exists("javafx.scene.robot.Robot")) {
+
+                Class<?> type = Class.forName("javafx.scene.robot.Robot");
+
+                robot = type.getConstructor().newInstance();
+                move = type.getMethod("mouseMove", double.class, double.class);
+                press = type.getMethod("mousePress", MouseButton[].class);
+                release = type.getMethod("mouseRelease", MouseButton[].class);
+                button = new MouseButton[]{MouseButton.PRIMARY};
+
+            } else {
+
+                Class<?> application = Class.forName("com.sun.glass.ui.Application");
+                Class<?> type = Class.forName("com.sun.glass.ui.Robot");
+
+                robot = application.getMethod("createRobot").invoke(application.getMethod("GetApplication").invoke(null));
+                move = type.getMethod("mouseMove", int.class, int.class);
+                press = type.getMethod("mousePress", int.class);
+                release = type.getMethod("mouseRelease", int.class);
+                button = type.getField("MOUSE_LEFT_BTN").get(null);
+            }
+        }
+
+        private static boolean exists(String name) {
+
+            try {
+
+                Class.forName(name);
+                return true;
+
+            } catch (ClassNotFoundException e) {
+
+                return false;
+            }
+        }
+
+        public void move(double x, double y) {
+
+            // JavaFX 8的Robot只接受整数坐标
+            if (move.getParameterTypes()[0] == int.class) {
+                invoke(move, (int) Math.round(x), (int) Math.round(y));
+            } else {
+                invoke(move, x, y);
+            }
+        }
+
+        public void press() {
+            invoke(press, button);
+        }
+
+        public void release() {
+            invoke(release, button);
+        }
+
+        private void invoke(Method method, Object... args) {
+            fx(() -> method.invoke(robot, args));
+        }
+    }
+}
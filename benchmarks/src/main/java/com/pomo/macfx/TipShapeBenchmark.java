@@ -0,0 +1,88 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.scene.shape.Polygon;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.shape.Shape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h2>提示框形状</h2>
+ * <p>每次做布尔运算（优化前的做法）与经由{@link MacShapeCache}取得形状的对比；文本宽度在几个常见值之间变化。</p>
+ * <p>基准测试只有一个线程访问缓存，无需切换到FX线程。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TipShapeBenchmark {
+
+    private final static double[] WIDTHS = {48, 64, 80, 96, 112};
+
+    private final static double HEIGHT = 20;
+
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        FxSupport.start();
+    }
+
+    @Benchmark
+    public Shape union() {
+
+        double width = nextWidth();
+
+        Rectangle rectangle = new Rectangle(width + 20, HEIGHT + 10);
+        rectangle.setArcWidth(10);
+        rectangle.setArcHeight(10);
+
+        Polygon polygon = new Polygon(0, 0, 20, 0, 10, 10);
+        polygon.setTranslateX(rectangle.getWidth() / 2 - 10);
+        polygon.setTranslateY(rectangle.getHeight());
+
+        return Shape.union(rectangle, polygon);
+    }
+
+    @Benchmark
+    public Shape cached() {
+        return MacShapeCache.tip(nextWidth(), HEIGHT);
+    }
+
+    private double nextWidth() {
+        cursor = (cursor + 1) % WIDTHS.length;
+        return WIDTHS[cursor];
+    }
+}
@@ -17,14 +17,23 @@
  */
 package com.pomo.macfx;
 
-import javafx.animation.FadeTransition;
+import javafx.animation.AnimationTimer;
+import javafx.beans.InvalidationListener;
+import javafx.geometry.Bounds;
 import javafx.scene.Node;
+import javafx.scene.image.Image;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.BackgroundImage;
+import javafx.scene.layout.BackgroundPosition;
+import javafx.scene.layout.BackgroundRepeat;
+import javafx.scene.layout.BackgroundSize;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.StackPane;
-import javafx.util.Duration;
 
+import java.util.List;
 import java.util.Objects;
+import java.util.function.DoubleConsumer;
 
 /**
  * <h2>背景</h2>
@@ -33,21 +42,70 @@ import java.util.Objects;
  */
 public final class MacBackground {
 
+    private final MacWallpapers wallpapers;
+
     private final StackPane bg;
     private final Pane windows;
+    private final MacWindowManager windowManager;
+
+    // 累积中的变化区域，与正在通知监听者的变化区域，每次通知时交换
+    private DirtyRegion dirtyRegion;
+    private DirtyRegion flushing;
+
+    // 同一脉冲内的多次重绘请求，合并为一次
+    private final AnimationTimer scheduler;
+
+    // 壁纸渐变的回调，只创建一次
+    private final DoubleConsumer fade;
+    private final Runnable fadeFinish;
+
+    // 正在淡出的旧壁纸
+    private Node fading;
 
     private Runnable invalidationListener;
 
-    public MacBackground(String url) {
+    // 当前壁纸
+    private String currentUrl;
+
+    private boolean scheduled;
+
+    private long requestedRepaints;
+    private long actualRepaints;
+
+    public MacBackground(List<String> urls, String url) {
+
+        wallpapers = new MacWallpapers(urls);
 
         windows = new Pane();
+        windowManager = new MacWindowManager(windows);
+        dirtyRegion = new DirtyRegion();
+        flushing = new DirtyRegion();
+
+        scheduler = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                flush();
+            }
+        };
+
+        fade = fraction -> {
+            fading.setOpacity(1 - fraction);
+            repaint();
+        };
+        fadeFinish = () -> fading.toBack();
 
         Region bg1 = new Region();
 
+        // 尺寸未知，首次布局时再按实际尺寸解码
         Region bg2 = new Region();
-        bg2.setStyle("-fx-background-image: url(" + url + ");");
+        currentUrl = url;
 
         bg = new StackPane(bg1, bg2, windows);
+
+        // 首次布局或跨档时，按新尺寸解码当前壁纸
+        InvalidationListener resize = it -> onResize();
+        bg.widthProperty().addListener(resize);
+        bg.heightProperty().addListener(resize);
     }
 
     public Region asNode() {
@@ -56,29 +114,236 @@ public final class MacBackground {
 
     public void setImage(String url) {
 
-        Node back = bg.getChildren().get(0);
+        currentUrl = url;
+
+        // 已预取时，本帧即可开始渐变
+        wallpapers.get(url, image -> {
+
+            // 解码期间已切换了壁纸
+            if (url.equals(currentUrl)) {
+                fadeTo(image);
+            }
+        });
+        wallpapers.prefetchNeighbours(url);
+    }
+
+    /**
+     * 预先解码，之后的{@link #setImage(String)}无需等待
+     */
+    public void prefetch(String url) {
+        wallpapers.prefetch(url);
+    }
+
+    private void onResize() {
+
+        if (bg.getWidth() <= 0 || bg.getHeight() <= 0 || !wallpapers.setViewport(bg.getWidth(), bg.getHeight())) {
+            return;
+        }
+
+        String url = currentUrl;
+
+        Region front = (Region) bg.getChildren().get(1);
+
+        // 首次布局，等待解码完成，避免先显示空白
+        if (front.getBackground() == null) {
+
+            front.setBackground(createBackground(wallpapers.getNow(url)));
+            wallpapers.prefetchNeighbours(url);
+
+            repaint();
+            return;
+        }
+
+        wallpapers.get(url, image -> {
+
+            // 期间已切换了壁纸
+            if (!url.equals(currentUrl)) {
+                return;
+            }
+
+            front.setBackground(createBackground(image));
+            repaint();
+        });
+    }
+
+    private void fadeTo(Image image) {
+
+        Region back = (Region) bg.getChildren().get(0);
         back.setOpacity(1);
-        back.setStyle("-fx-background-image: url(" + url + ");");
+        back.setBackground(createBackground(image));
 
-        Node front = bg.getChildren().get(1);
+        fading = bg.getChildren().get(1);
 
-        FadeTransition transition = new FadeTransition(Duration.seconds(1), front);
-        transition.setFromValue(1);
-        transition.setToValue(0);
-        transition.currentTimeProperty().addListener(it -> repaint());
-        transition.setOnFinished(e -> front.toBack());
-        transition.play();
+        MacTween.run(1, MacTween.EASE_BOTH, fade, fadeFinish);
+    }
+
+    /**
+     * 居中铺满，图片已按显示尺寸解码
+     */
+    private static Background createBackground(Image image) {
+        return new Background(new BackgroundImage(image,
+                BackgroundRepeat.NO_REPEAT, BackgroundRepeat.NO_REPEAT, BackgroundPosition.CENTER,
+                new BackgroundSize(BackgroundSize.AUTO, BackgroundSize.AUTO, true, true, false, true)));
     }
 
     public void setOnInvalidationListener(Runnable runnable) {
         this.invalidationListener = Objects.requireNonNull(runnable);
     }
 
+    /**
+     * 整个背景都已变化
+     */
     public void repaint() {
-        invalidationListener.run();
+        dirtyRegion.addAll();
+        schedule();
+    }
+
+    /**
+     * 背景坐标系中的某个区域已变化
+     */
+    public void repaint(Bounds bounds) {
+        dirtyRegion.add(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+        schedule();
+    }
+
+    /**
+     * 背景坐标系中的某个区域，由from移动到了to
+     */
+    public void repaint(Bounds from, Bounds to) {
+        dirtyRegion.add(
+                Math.min(from.getMinX(), to.getMinX()), Math.min(from.getMinY(), to.getMinY()),
+                Math.max(from.getMaxX(), to.getMaxX()), Math.max(from.getMaxY(), to.getMaxY())
+        );
+        schedule();
+    }
+
+    /**
+     * 背景坐标系中的指定区域，是否与本次通知的变化区域相交
+     */
+    public boolean isDirty(Bounds bounds) {
+        return flushing.intersects(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+    }
+
+    /**
+     * 累计请求重绘次数
+     */
+    public long getRequestedRepaints() {
+        return requestedRepaints;
+    }
+
+    /**
+     * 累计实际重绘次数，每个脉冲至多一次
+     */
+    public long getActualRepaints() {
+        return actualRepaints;
+    }
+
+    /**
+     * 在下一个脉冲通知监听者，不标记任何变化区域
+     */
+    void schedule() {
+
+        requestedRepaints++;
+        MacQuality.active();
+
+        if (!scheduled) {
+            scheduled = true;
+            scheduler.start();
+        }
+    }
+
+    private void flush() {
+
+        scheduler.stop();
+        scheduled = false;
+
+        actualRepaints++;
+
+        // 先交换，监听者期间新增的变化区域留给下一个脉冲
+        DirtyRegion region = dirtyRegion;
+        dirtyRegion = flushing;
+        flushing = region;
+
+        if (invalidationListener != null) {
+            invalidationListener.run();
+        }
+
+        flushing.clear();
+    }
+
+    MacWindowManager getWindowManager() {
+        return windowManager;
     }
 
     public Pane getWindows() {
         return windows;
     }
+
+    /**
+     * <h2>脏区</h2>
+     * <p>固定容量的矩形集合，满了之后合并为一个外包矩形，不产生任何对象。</p>
+     */
+    private final static class DirtyRegion {
+
+        private final static int CAPACITY = 8;
+
+        // 每个矩形依次占用 minX, minY, maxX, maxY 四个位置
+        private final double[] rects = new double[CAPACITY * 4];
+
+        private int size;
+
+        public void add(double minX, double minY, double maxX, double maxY) {
+
+            if (size == CAPACITY) {
+
+                // 已满，全部合并到第一个
+                for (int i = 1; i < size; i++) {
+                    union(0, rects[i * 4], rects[i * 4 + 1], rects[i * 4 + 2], rects[i * 4 + 3]);
+                }
+                size = 1;
+
+                union(0, minX, minY, maxX, maxY);
+                return;
+            }
+
+            int offset = size * 4;
+            rects[offset] = minX;
+            rects[offset + 1] = minY;
+            rects[offset + 2] = maxX;
+            rects[offset + 3] = maxY;
+            size++;
+        }
+
+        public void addAll() {
+            clear();
+            add(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+        }
+
+        public boolean intersects(double minX, double minY, double maxX, double maxY) {
+
+            for (int i = 0; i < size; i++) {
+
+                int offset = i * 4;
+                if (rects[offset] <= maxX && rects[offset + 2] >= minX
+                        && rects[offset + 1] <= maxY && rects[offset + 3] >= minY) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        public void clear() {
+            size = 0;
+        }
+
+        private void union(int index, double minX, double minY, double maxX, double maxY) {
+
+            int offset = index * 4;
+            rects[offset] = Math.min(rects[offset], minX);
+            rects[offset + 1] = Math.min(rects[offset + 1], minY);
+            rects[offset + 2] = Math.max(rects[offset + 2], maxX);
+            rects[offset + 3] = Math.max(rects[offset + 3], maxY);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,185 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <h2>磁盘缓存</h2>
+ * <p>位于用户目录下的.mac-fx/cache中，文件以内容摘要命名，源文件变化后自然失效。</p>
+ * <p>图片以未压缩的BGRA预乘像素保存，读取时无需解码。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacDiskCache {
+
+    private final static int MAGIC = 0x4D465849; // MFXI
+
+    private final static int HEADER = 12;
+
+    private final static Path ROOT = Paths.get(System.getProperty("user.home"), ".mac-fx", "cache");
+
+    private MacDiskCache() {
+    }
+
+    /**
+     * 缓存子目录，不存在则创建
+     */
+    public static Path dir(String name) throws IOException {
+        return Files.createDirectories(ROOT.resolve(name));
+    }
+
+    /**
+     * 读取类路径资源的全部字节
+     */
+    public static byte[] readResource(String path) throws IOException {
+
+        try (InputStream in = MacDiskCache.class.getResourceAsStream(path)) {
+
+            if (in == null) {
+                throw new IOException("resource not found: " + path);
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(in.available());
+            byte[] buffer = new byte[8192];
+
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                out.write(buffer, 0, length);
+            }
+
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * 内容摘要，十六进制
+     */
+    public static String hash(byte[] bytes) {
+
+        try {
+
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+
+            return builder.toString();
+
+        } catch (NoSuchAlgorithmException e) {
+
+            // 所有Java平台都必须支持SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 读取缓存的图片，不存在或格式不符时返回null
+     */
+    public static Image readImage(Path file) throws IOException {
+
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (header.hasRemaining() && channel.read(header) != -1) {
+                // 读满为止
+            }
+            header.flip();
+
+            if (header.remaining() < HEADER || header.getInt() != MAGIC) {
+                return null;
+            }
+
+            int width = header.getInt();
+            int height = header.getInt();
+
+            if (width <= 0 || height <= 0 || channel.size() != HEADER + (long) width * height * 4) {
+                return null;
+            }
+
+            ByteBuffer pixels = ByteBuffer.allocate(width * height * 4);
+            while (pixels.hasRemaining() && channel.read(pixels) != -1) {
+                // 读满为止
+            }
+            pixels.flip();
+
+            WritableImage image = new WritableImage(width, height);
+            image.getPixelWriter().setPixels(0, 0, width, height,
+                    PixelFormat.getByteBgraPreInstance(), pixels, width * 4);
+
+            return image;
+        }
+    }
+
+    /**
+     * 写入缓存，先写临时文件再替换，避免读到一半的文件
+     */
+    public static void writeImage(Path file, Image image) throws IOException {
+
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + width * height * 4);
+        buffer.putInt(MAGIC).putInt(width).putInt(height);
+
+        ByteBuffer pixels = buffer.slice();
+        image.getPixelReader().getPixels(0, 0, width, height,
+                PixelFormat.getByteBgraPreInstance(), pixels, width * 4);
+
+        buffer.rewind();
+
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+
+        try {
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } finally {
+
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -27,25 +27,18 @@ import javafx.beans.property.SimpleIntegerProperty;
 import javafx.collections.ObservableList;
 import javafx.geometry.Bounds;
 import javafx.geometry.Insets;
-import javafx.geometry.Rectangle2D;
 import javafx.scene.Group;
 import javafx.scene.Node;
-import javafx.scene.SnapshotParameters;
 import javafx.scene.control.Label;
 import javafx.scene.effect.BoxBlur;
 import javafx.scene.effect.DropShadow;
-import javafx.scene.layout.HBox;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.StackPane;
-import javafx.scene.paint.ImagePattern;
-import javafx.scene.paint.Paint;
-import javafx.scene.shape.Polygon;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.shape.Shape;
 
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 /**
  * <h2>Dock栏</h2>
@@ -61,15 +54,17 @@ public final class MacDock {
     public static final int MAX_BLUR = 3;
 
     // 这个值是测出来的，其主要是为了保证总是有偶数个点被update
-    private final static double EYE_DISTANCE = 271;
+    final static double EYE_DISTANCE = 271;
 
     private final StackPane root;
-    private final HBox container;
+    private final MacDockPane container;
 
     private final DoubleProperty toBottom;
     private final IntegerProperty blur;
 
-    private List<MacDockItem> items;
+    private final MacDockGlass glass;
+
+    private final MacDockIndex index;
 
     public MacDock(MacBackground macBackground) {
 
@@ -84,9 +79,11 @@ public final class MacDock {
         root.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
         // endregion
 
+        index = new MacDockIndex();
+
         // region {DockItem容器}
         // 不应使用间隙，因为处于中间位置时-点击，无法判定
-        container = new HBox();
+        container = new MacDockPane(index);
         container.getStyleClass().add("container");
         container.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
         // endregion
@@ -98,7 +95,11 @@ public final class MacDock {
         grass.widthProperty().bind(container.widthProperty());
 
         BoxBlur boxBlur = new BoxBlur();
-        boxBlur.iterationsProperty().bind(blur);
+        // 不超过当前画质允许的上限
+        boxBlur.iterationsProperty().bind(Bindings.createIntegerBinding(
+                () -> Math.min(blur.get(), MacQuality.getTier().getMaxBlur()),
+                blur, MacQuality.tierProperty()
+        ));
         DropShadow shadow = new DropShadow();
         shadow.setInput(boxBlur);
 
@@ -122,82 +123,61 @@ public final class MacDock {
         Node tip = dockTip.asNode();
         tip.setManaged(false);
 
-        root.setOnMouseExited(e -> items.forEach(MacDockItem::reset));
-        root.setOnMouseMoved(e -> {
-
-            double x = e.getX();
-
-            double distanceV = container.getLayoutY() + container.getHeight() / 5;
-            double percentY = 1 - Math.abs(e.getY() - distanceV) / distanceV;
-
-            boolean selected = false;
-
-            for (MacDockItem item : items) {
-
-                Node node = item.asNode();
-                Bounds bounds = root.sceneToLocal(node.localToScene(node.getBoundsInLocal()));
-
-                // 当前选中
-                if (bounds.contains(x, e.getY())) {
-
-                    selected = true;
-
-                    item.update(1 * percentY);
-
-                    if (!children.contains(tip)) {
-                        children.add(tip);
-                    }
-                    dockTip.setText(item.getName());
-
-                    Bounds tipBounds = tip.getBoundsInLocal();
-                    tip.relocate(
-                            bounds.getMinX() + bounds.getWidth() / 2 - tipBounds.getWidth() / 2,
-                            bounds.getMinY() - tipBounds.getHeight()
-                    );
-
-                } else {
+        root.setOnMouseExited(e -> {
+            container.reset();
+        });
+        // 子项超出可显示的数量时，滚轮逐个滚动
+        root.setOnScroll(e -> {
 
-                    // 鼠标到近边的距离
-                    double distanceX = Math.min(Math.abs(x - bounds.getMinX()), Math.abs(x - bounds.getMaxX()));
-                    double percentX = 1 - distanceX / EYE_DISTANCE;
+            double delta = e.getDeltaY() != 0 ? e.getDeltaY() : e.getDeltaX();
 
-                    item.update(percentX * percentY);
-                }
-
-                if (!selected) {
-                    children.remove(tip);
-                }
+            if (delta != 0 && container.scroll(delta > 0 ? -1 : 1)) {
+                container.reset();
+                children.remove(tip);
             }
         });
+        root.setOnMouseMoved(e -> {
 
-        Region bg = macBackground.asNode();
+            // 尚未布局
+            if (!index.isValid()) {
+                return;
+            }
 
-        SnapshotParameters parameters = new SnapshotParameters();
-        parameters.setFill(null);
+            // 转换为容器坐标
+            double x = e.getX() - container.getLayoutX() - container.getTranslateX();
+            double y = e.getY() - container.getLayoutY() - container.getTranslateY();
 
-        ObjectBinding<Paint> fillBinding = Bindings.createObjectBinding(() -> {
+            double distanceV = container.getLayoutY() + container.getHeight() / 5;
+            double percentY = 1 - Math.abs(e.getY() - distanceV) / distanceV;
 
-            Bounds bounds = grass.localToScene(grass.getLayoutBounds());
+            int selected = container.hover(x, y, percentY);
 
-            Rectangle2D viewport = new Rectangle2D(
-                    bounds.getMinX(), bounds.getMinY(),
-                    bounds.getWidth(), bounds.getHeight()
-            );
-            parameters.setViewport(viewport);
+            // 当前选中
+            if (selected >= 0) {
 
+                MacDockItem item = container.getItem(selected);
 
-            try {
+                if (!children.contains(tip)) {
+                    children.add(tip);
+                }
+                dockTip.setText(item.getName());
 
-                return new ImagePattern(bg.snapshot(parameters, null));
+                double offsetX = container.getLayoutX() + container.getTranslateX();
+                double offsetY = container.getLayoutY() + container.getTranslateY();
 
-            } catch (NullPointerException ignored) {
+                Bounds tipBounds = tip.getBoundsInLocal();
+                tip.relocate(
+                        offsetX + (index.getMinX(selected) + index.getMaxX(selected)) / 2 - tipBounds.getWidth() / 2,
+                        offsetY + index.getMinY(selected) - tipBounds.getHeight()
+                );
 
-                return null;
-            }
+            } else {
 
-        }, grass.widthProperty());
+                children.remove(tip);
+            }
+        });
 
-        macBackground.setOnInvalidationListener(fillBinding::invalidate);
+        glass = new MacDockGlass(macBackground, root, grass);
 
         // 下一次才能得到正确的高度
         Platform.runLater(() -> {
@@ -209,22 +189,25 @@ public final class MacDock {
                     .subtract(root.getPadding().getBottom())
                     .add(5)
             );
-
-            grass.fillProperty().bind(fillBinding);
         });
     }
 
     public void setItems(List<MacDockItem> items) {
 
-        this.items = Objects.requireNonNull(items);
-
-        container.getChildren().addAll(items.stream().map(MacDockItem::asNode).collect(Collectors.toList()));
+        container.setItems(Objects.requireNonNull(items));
     }
 
     public Node asNode() {
         return root;
     }
 
+    /**
+     * 玻璃板累计截图次数
+     */
+    public long getSnapshotCount() {
+        return glass.getSnapshotCount();
+    }
+
     public double getToBottom() {
         return toBottom.get();
     }
@@ -262,15 +245,8 @@ public final class MacDock {
 
             ObjectBinding<Node> graphicBinding = Bindings.createObjectBinding(() -> {
 
-                Rectangle rectangle = new Rectangle(label.getWidth() + 20, label.getHeight() + 10);
-                rectangle.setArcWidth(10);
-                rectangle.setArcHeight(10);
-
-                Polygon polygon = new Polygon(0, 0, 20, 0, 10, 10);
-                polygon.setTranslateX(rectangle.getWidth() / 2 - 10);
-                polygon.setTranslateY(rectangle.getHeight());
-
-                Shape shape = Shape.union(rectangle, polygon);
+                // 同样尺寸的提示框，复用已计算的路径
+                Shape shape = MacShapeCache.tip(label.getWidth(), label.getHeight());
                 shape.getStyleClass().add("border");
                 shape.setTranslateX(-10);
                 shape.setTranslateY(-3);
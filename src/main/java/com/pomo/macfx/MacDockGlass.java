@@ -0,0 +1,161 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.geometry.Bounds;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.ImagePattern;
+import javafx.scene.shape.Rectangle;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h2>Dock栏玻璃板</h2>
+ * <p>仅当背景的变化区域与玻璃板相交时，才重新截取背景；截图轮流写入固定数量的预分配图片中。</p>
+ * <p>两次截图的最小间隔由当前画质决定。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacDockGlass {
+
+    // 轮流使用，保证每次截图后填充都会变化，从而触发玻璃板重绘
+    private final static int RING_SIZE = 2;
+
+    private final MacBackground macBackground;
+    private final Region bg;
+    private final Rectangle grass;
+
+    private final SnapshotParameters parameters;
+
+    private final WritableImage[] images;
+    private final ImagePattern[] patterns;
+
+    private int cursor;
+
+    private Bounds lastBounds;
+
+    // 上次截图的时刻，毫秒
+    private long lastSnapshot;
+
+    // 因画质限制推迟了截图，之后需要补上
+    private boolean deferred;
+
+    // 推迟后，到时重试的任务
+    private ScheduledFuture<?> retry;
+
+    private long snapshotCount;
+
+    public MacDockGlass(MacBackground macBackground, Node dock, Rectangle grass) {
+
+        this.macBackground = macBackground;
+        this.bg = macBackground.asNode();
+        this.grass = grass;
+
+        parameters = new SnapshotParameters();
+        parameters.setFill(null);
+
+        images = new WritableImage[RING_SIZE];
+        patterns = new ImagePattern[RING_SIZE];
+
+        macBackground.setOnInvalidationListener(this::refresh);
+
+        // 玻璃板尺寸、位置变化时，整块都需要重新截取
+        grass.boundsInParentProperty().addListener(it -> macBackground.schedule());
+        dock.boundsInParentProperty().addListener(it -> macBackground.schedule());
+    }
+
+    private void refresh() {
+
+        if (grass.getScene() == null || grass.getHeight() <= 0) {
+            return;
+        }
+
+        Bounds bounds = bg.sceneToLocal(grass.localToScene(grass.getLayoutBounds()));
+
+        boolean moved = !bounds.equals(lastBounds);
+
+        // 变化的区域不在玻璃板下方，无需截图
+        if (!moved && !deferred && !macBackground.isDirty(bounds)) {
+            return;
+        }
+
+        // 未到画质允许的间隔，到时再试，期间不再请求脉冲
+        long now = System.currentTimeMillis();
+        long wait = lastSnapshot + MacQuality.getTier().getGlassInterval() - now;
+        if (wait > 0) {
+
+            deferred = true;
+
+            if (retry == null) {
+                retry = MacTicker.later(wait, TimeUnit.MILLISECONDS, () -> {
+                    retry = null;
+                    macBackground.schedule();
+                });
+            }
+
+            return;
+        }
+
+        int width = (int) Math.ceil(bounds.getWidth());
+        int height = (int) Math.ceil(bounds.getHeight());
+
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        if (moved) {
+            parameters.setViewport(new Rectangle2D(bounds.getMinX(), bounds.getMinY(), width, height));
+            lastBounds = bounds;
+        }
+
+        cursor = (cursor + 1) % RING_SIZE;
+
+        WritableImage image = images[cursor];
+        if (image == null || (int) image.getWidth() != width || (int) image.getHeight() != height) {
+            image = new WritableImage(width, height);
+            images[cursor] = image;
+            patterns[cursor] = new ImagePattern(image);
+        }
+
+        try {
+
+            bg.snapshot(parameters, image);
+
+        } catch (NullPointerException ignored) {
+
+            return;
+        }
+
+        deferred = false;
+        lastSnapshot = now;
+        snapshotCount++;
+        grass.setFill(patterns[cursor]);
+    }
+
+    /**
+     * 累计截图次数
+     */
+    public long getSnapshotCount() {
+        return snapshotCount;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import java.util.Arrays;
+
+/**
+ * <h2>Dock栏几何索引</h2>
+ * <p>以基本类型数组缓存各子项在容器中的范围，子项从左到右排列，因此可以二分查找。</p>
+ * <p>由{@link MacDockPane}在布局时填充，鼠标移动时的查询不产生任何对象。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacDockIndex {
+
+    private double[] minX = new double[0];
+    private double[] maxX = new double[0];
+    private double[] minY = new double[0];
+    private double[] maxY = new double[0];
+
+    private int size;
+
+    private boolean valid;
+
+    public void invalidate() {
+        valid = false;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    public void set(int index, double minX, double minY, double maxX, double maxY) {
+        this.minX[index] = minX;
+        this.minY[index] = minY;
+        this.maxX[index] = maxX;
+        this.maxY[index] = maxY;
+    }
+
+    public void ensureCapacity(int capacity) {
+
+        if (minX.length < capacity) {
+            minX = Arrays.copyOf(minX, capacity);
+            maxX = Arrays.copyOf(maxX, capacity);
+            minY = Arrays.copyOf(minY, capacity);
+            maxY = Arrays.copyOf(maxY, capacity);
+        }
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+        valid = true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 第一个右边界大于x的子项，不存在则返回size
+     */
+    public int lowerBound(double x) {
+
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+
+            int mid = (low + high) >>> 1;
+
+            if (maxX[mid] <= x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * 第一个左边界不小于x的子项，不存在则返回size
+     */
+    public int upperBound(double x) {
+
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+
+            int mid = (low + high) >>> 1;
+
+            if (minX[mid] < x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * 包含该点的子项，不存在则返回-1
+     */
+    public int indexAt(double x, double y) {
+
+        int index = lowerBound(x);
+
+        if (index < size && contains(index, x, y)) {
+            return index;
+        }
+
+        return -1;
+    }
+
+    public boolean contains(int index, double x, double y) {
+        return x >= minX[index] && x <= maxX[index] && y >= minY[index] && y <= maxY[index];
+    }
+
+    /**
+     * 点到子项近边的水平距离
+     */
+    public double distance(int index, double x) {
+        return Math.min(Math.abs(x - minX[index]), Math.abs(x - maxX[index]));
+    }
+
+    public double getMinX(int index) {
+        return minX[index];
+    }
+
+    public double getMaxX(int index) {
+        return maxX[index];
+    }
+
+    public double getMinY(int index) {
+        return minY[index];
+    }
+
+    public double getMaxY(int index) {
+        return maxY[index];
+    }
+}
@@ -17,12 +17,11 @@
  */
 package com.pomo.macfx;
 
-import javafx.animation.Interpolator;
-import javafx.animation.KeyFrame;
-import javafx.animation.KeyValue;
-import javafx.animation.Timeline;
-import javafx.beans.property.DoubleProperty;
+import javafx.beans.binding.Bindings;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ObservableList;
 import javafx.geometry.Bounds;
+import javafx.geometry.Insets;
 import javafx.scene.Group;
 import javafx.scene.Node;
 import javafx.scene.effect.Reflection;
@@ -30,29 +29,28 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.Region;
-import javafx.scene.layout.StackPane;
-import javafx.scene.media.AudioClip;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 import javafx.scene.shape.Shape;
 import javafx.scene.transform.Rotate;
-import javafx.util.Duration;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
  * <h2>Dock栏子项</h2>
+ * <p>图标、边框与倒影组成的节点较重，仅在显示时从池中取用，移出显示范围后归还，供其他子项复用。</p>
  *
  * @author Mr.Po, ldd_live@foxmail.com
  */
 public final class MacDockItem {
 
-    private final static AudioClip AUDIO_OPEN = new AudioClip(MacDockItem.class.getResource("/com/pomo/macfx/sound/open.wav").toExternalForm());
-
-    private final static AudioClip AUDIO_RECOVER = new AudioClip(MacDockItem.class.getResource("/com/pomo/macfx/sound/recover.wav").toExternalForm());
-
-    private final static AudioClip AUDIO_MENU = new AudioClip(MacDockItem.class.getResource("/com/pomo/macfx/sound/menu.wav").toExternalForm());
+    // 最小化超过此秒数后休眠，可通过系统属性macfx.hibernate.after调整，小于0时不休眠
+    private final static long HIBERNATE_AFTER = Long.getLong("macfx.hibernate.after", 60);
 
     private final static double BASE_SIZE = 100;
 
@@ -65,69 +63,95 @@ public final class MacDockItem {
     private final static double BASE_TOP_OFFSET = 9;
     private final static double EXT_TOP_OFFSET = -5;
 
-    private final Region root;
-    private final Group group;
+    // 放大曲线的查找表，按放大等级取值
+    static final int LEVELS = 256;
+
+    private final static double[] SCALES = new double[LEVELS + 1];
+    private final static double[] FRACTIONS = new double[LEVELS + 1];
+    private final static double[] TOP_OFFSETS = new double[LEVELS + 1];
+
+    static {
 
-    private final DoubleProperty fractionProperty;
-    private final DoubleProperty topOffsetProperty;
+        for (int i = 0; i <= LEVELS; i++) {
+
+            double percent = (double) i / LEVELS;
+
+            SCALES[i] = EXT_SCALE * percent + BASE_SCALE;
+            FRACTIONS[i] = EXT_FRACTION * percent + BASE_FRACTION;
+            TOP_OFFSETS[i] = EXT_TOP_OFFSET * percent + BASE_TOP_OFFSET;
+        }
+    }
+
+    // 已归还的图标节点
+    private final static Deque<Cell> POOL = new ArrayDeque<>();
+
+    private final static Runnable PLAY_OPEN = MacSound.OPEN::play;
+
+    private final Pane root;
+
+    private final ObservableValue<Image> image;
 
     private final String name;
 
     private final Circle dot;
 
-    private MacWindow macWindow;
+    private int level = -1;
 
-    public MacDockItem(MacBackground macBackground, Image image, String name,
-                       Function<Node, MacWindow> supplier) {
+    // 显示中时持有的图标节点
+    private Cell cell;
 
-        this.name = Objects.requireNonNull(name);
-
-        ImageView imageView = new ImageView(image);
-        imageView.setFitWidth(BASE_SIZE * 2);
-        imageView.setFitHeight(BASE_SIZE * 2);
-        imageView.setClip(new Circle(BASE_SIZE, BASE_SIZE, BASE_SIZE));
+    private MacWindow macWindow;
 
-        Shape circleBorder = createCircleBorder();
+    // 已休眠时，恢复窗口所需的信息
+    private MacWindow.Hibernation hibernation;
 
-        group = new Group(imageView, circleBorder);
+    private ScheduledFuture<?> hibernateTask;
 
-        group.setScaleX(BASE_SCALE);
-        group.setScaleY(BASE_SCALE);
+    private final Opener opener;
 
+    public MacDockItem(MacBackground macBackground, ObservableValue<Image> image, String name,
+                       Function<Node, MacWindow> supplier) {
 
-        Reflection reflection = new Reflection(BASE_TOP_OFFSET, BASE_FRACTION, 0.4, 0);
-        fractionProperty = reflection.fractionProperty();
-        topOffsetProperty = reflection.topOffsetProperty();
+        this.image = Objects.requireNonNull(image);
+        this.name = Objects.requireNonNull(name);
 
-        group.setEffect(reflection);
+        opener = new Opener();
 
         dot = new Circle(4);
         dot.getStyleClass().add("dot");
         dot.setVisible(false);
+        dot.setManaged(false);
 
-        root = new StackPane(new Group(group), dot);
+        // 由MacDockPane直接定位，自身不参与布局计算
+        root = new Pane(dot);
         root.getStyleClass().add("dock-item");
-        root.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+        // 与窗口标题相同，供读屏软件朗读
+        root.setAccessibleText(name);
 
         root.hoverProperty().addListener((observable, oldValue, newValue) -> {
             if (newValue) {
-                AUDIO_MENU.play();
+                MacSound.MENU.play();
             }
         });
 
         root.setOnMouseClicked(e -> {
 
-            if (macWindow != null) {
+            if (hibernation != null) {
+
+                wake(macBackground.getWindows(), supplier);
+                MacSound.RECOVER.play();
+
+            } else if (macWindow != null) {
 
                 if (macWindow.getState() == MacWindow.State.HIDE) {
                     macWindow.recover();
-                    AUDIO_RECOVER.play();
+                    MacSound.RECOVER.play();
                 }
 
             } else {
 
                 macWindow = supplier.apply(root);
-                showFromFirst(macBackground.getWindows(), macWindow, root);
+                opener.open(macBackground.getWindows(), macWindow, root);
                 dot.setVisible(true);
             }
         });
@@ -137,113 +161,344 @@ public final class MacDockItem {
         return root;
     }
 
-    public void update(double percent) {
+    /**
+     * 从池中取用图标节点，已持有时不做任何事
+     */
+    void realize() {
+
+        if (cell != null) {
+            return;
+        }
 
-        if (percent < 0) {
+        cell = POOL.isEmpty() ? new Cell() : POOL.pop();
+        cell.imageView.imageProperty().bind(image);
 
-            reset();
+        root.getChildren().add(0, cell.group);
+
+        level = -1;
+        setLevel(0);
+    }
+
+    /**
+     * 将图标节点归还到池中，未持有时不做任何事
+     */
+    void release() {
+
+        if (cell == null) {
             return;
+        }
 
-        } else if (percent > 1) {
+        root.getChildren().remove(cell.group);
 
-            percent = 1;
+        cell.imageView.imageProperty().unbind();
+        cell.imageView.setImage(null);
+
+        POOL.push(cell);
+        cell = null;
+    }
+
+    boolean isRealized() {
+        return cell != null;
+    }
+
+    /**
+     * 图标在屏幕上的最小尺寸，即未放大时的尺寸
+     */
+    static double getMinIconSize() {
+        return BASE_SIZE * 2 * SCALES[0];
+    }
+
+    /**
+     * 图标在屏幕上的最大尺寸，即完全放大时的尺寸
+     */
+    static double getMaxIconSize() {
+        return BASE_SIZE * 2 * SCALES[LEVELS];
+    }
+
+    /**
+     * 放大比例对应的等级
+     */
+    static int toLevel(double percent) {
+
+        if (percent <= 0) {
+            return 0;
+        } else if (percent >= 1) {
+            return LEVELS;
+        }
+
+        return (int) (percent * LEVELS + 0.5);
+    }
+
+    /**
+     * 设置放大等级，等级未变或未显示时不做任何事
+     */
+    void setLevel(int level) {
+
+        if (this.level == level || cell == null) {
+            return;
         }
 
-        double scale = EXT_SCALE * percent + BASE_SCALE;
-        group.setScaleX(scale);
-        group.setScaleY(scale);
+        this.level = level;
+
+        double scale = SCALES[level];
+        cell.group.setScaleX(scale);
+        cell.group.setScaleY(scale);
+
+        cell.reflection.setFraction(FRACTIONS[level]);
+        cell.reflection.setTopOffset(TOP_OFFSETS[level]);
+    }
+
+    /**
+     * 指定等级下所占宽度
+     */
+    double getSlotWidth(int level) {
+
+        Insets insets = root.getInsets();
 
-        fractionProperty.set(EXT_FRACTION * percent + BASE_FRACTION);
-        topOffsetProperty.set(EXT_TOP_OFFSET * percent + BASE_TOP_OFFSET);
+        return insets.getLeft() + BASE_SIZE * 2 * SCALES[level] + insets.getRight();
     }
 
-    public void reset() {
+    /**
+     * 指定等级下所占高度，包含倒影
+     */
+    double getSlotHeight(int level) {
 
-        group.setScaleX(BASE_SCALE);
-        group.setScaleY(BASE_SCALE);
+        Insets insets = root.getInsets();
 
-        fractionProperty.set(BASE_FRACTION);
+        double scale = SCALES[level];
+        double reflection = FRACTIONS[level] > 0 ? (TOP_OFFSETS[level] + BASE_SIZE * 2 * FRACTIONS[level]) * scale : 0;
+
+        return insets.getTop() + BASE_SIZE * 2 * scale + reflection + insets.getBottom();
     }
 
-    private Shape createCircleBorder() {
+    /**
+     * 按当前等级，放置图标与指示点
+     */
+    void layoutSlot(double width, double height) {
+
+        Insets insets = root.getInsets();
 
-        Circle circle1 = new Circle(0, 0, BASE_SIZE);
-        Circle circle2 = new Circle(0, 0, BASE_SIZE - 10);
+        if (cell != null) {
 
-        Shape shape = Shape.subtract(circle1, circle2);
-        shape.setFill(Color.WHITE);
-        shape.setStroke(Color.LIGHTGRAY);
-        shape.setStrokeWidth(2.5);
-        shape.setLayoutX(BASE_SIZE);
-        shape.setLayoutY(BASE_SIZE);
+            // 缩放以中心为轴，需要补偿
+            double offset = BASE_SIZE * SCALES[level] - BASE_SIZE;
+            cell.group.setLayoutX(insets.getLeft() + offset);
+            cell.group.setLayoutY(insets.getTop() + offset);
+        }
 
-        return shape;
+        // 圆心位置
+        dot.setLayoutX(width / 2);
+        dot.setLayoutY(height - insets.getBottom() - dot.getRadius());
     }
 
-    private void showFromFirst(Pane windows, MacWindow macWindow, Node source) {
+    /**
+     * 跟踪窗口的状态：销毁时移除，最小化一段时间后休眠
+     */
+    private void watch(Pane windows, MacWindow macWindow) {
 
         Region window = macWindow.asNode();
-        windows.getChildren().add(window);
+
         macWindow.stateProperty().addListener((observable, oldValue, newValue) -> {
+
+            if (hibernateTask != null) {
+                hibernateTask.cancel(false);
+                hibernateTask = null;
+            }
+
             if (newValue == MacWindow.State.DESTROY) {
+
                 windows.getChildren().remove(window);
                 this.macWindow = null;
                 dot.setVisible(false);
+
+            } else if (newValue == MacWindow.State.HIDE && HIBERNATE_AFTER >= 0) {
+
+                hibernateTask = MacTicker.later(HIBERNATE_AFTER, TimeUnit.SECONDS, () -> hibernate(macWindow));
             }
         });
+    }
+
+    /**
+     * 仅保留截图与位置，释放窗口的内容
+     */
+    private void hibernate(MacWindow macWindow) {
+
+        // 期间已恢复或已关闭
+        if (this.macWindow != macWindow || macWindow.getState() != MacWindow.State.HIDE) {
+            return;
+        }
+
+        hibernation = macWindow.hibernate();
+        this.macWindow = null;
+    }
+
+    /**
+     * 重新创建窗口，以休眠前的截图播放恢复动画
+     */
+    private void wake(Pane windows, Function<Node, MacWindow> supplier) {
+
+        macWindow = supplier.apply(root);
+        watch(windows, macWindow);
+
+        macWindow.restore(hibernation);
+        hibernation = null;
+
+        macWindow.recover();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 打开动画：窗口的截图从子项翻转飞出，再以扩大的圆形裁剪完全露出；动画的状态与回调只创建一次，每次打开时复用
+     */
+    private final class Opener {
+
+        private final Circle clip;
+
+        private final Rotate rotateX;
+        private final Rotate rotateY;
+        private final Rotate rotateZ;
+
+        private final Runnable expand;
+        private final Runnable finish;
+
+        private Pane windows;
+        private Region window;
+        private ImageView proxy;
+
+        // 截图包含阴影，窗口在截图中的偏移
+        private double offsetX;
+        private double offsetY;
+
+        private double radius;
+
+        public Opener() {
+
+            clip = new Circle();
 
-        windows.applyCss();
-        windows.layout();
+            rotateX = new Rotate(0, Rotate.X_AXIS);
+            rotateY = new Rotate(0, Rotate.Y_AXIS);
+            rotateZ = new Rotate(0, Rotate.Z_AXIS);
 
-        double halfWidth = window.getWidth() / 2;
-        double halfHeight = window.getHeight() / 2;
+            finish = () -> {
 
-        Circle clip = new Circle(halfWidth, halfHeight, 15);
-        window.setClip(clip);
+                window.relocate(proxy.getLayoutX() + offsetX, proxy.getLayoutY() + offsetY);
 
-        Bounds bounds = windows.sceneToLocal(source.localToScene(source.getBoundsInLocal()));
+                ObservableList<Node> children = windows.getChildren();
+                children.set(children.indexOf(proxy), window);
 
-        window.setLayoutX(bounds.getMinX() + bounds.getWidth() / 2 - halfWidth);
-        window.setLayoutY(bounds.getMinY() + bounds.getHeight() / 2 - halfHeight);
+                proxy.setClip(null);
+                proxy.getTransforms().clear();
 
-        Rotate rotateX = new Rotate(180, halfWidth, halfHeight, 0, Rotate.X_AXIS);
-        Rotate rotateY = new Rotate(180, halfWidth, halfHeight, 0, Rotate.Y_AXIS);
-        Rotate rotateZ = new Rotate(180, halfWidth, halfHeight, 0, Rotate.Z_AXIS);
-        window.getTransforms().addAll(
-                rotateX,
-                rotateY,
-                rotateZ
-        );
+                windows = null;
+                window = null;
+                proxy = null;
+            };
 
-        Timeline timeline1 = new Timeline(new KeyFrame(Duration.seconds(0.5),
-                new KeyValue(rotateX.angleProperty(), 0, Interpolator.EASE_IN),
-                new KeyValue(rotateY.angleProperty(), 0, Interpolator.EASE_IN),
-                new KeyValue(rotateZ.angleProperty(), 0, Interpolator.EASE_IN),
-                new KeyValue(clip.radiusProperty(), 35, Interpolator.EASE_IN)
-        ));
+            expand = () -> MacTween.to(clip.radiusProperty(), radius, 0.3, MacTween.EASE_OUT, finish);
+        }
+
+        public void open(Pane windows, MacWindow macWindow, Node source) {
+
+            Region window = macWindow.asNode();
+            windows.getChildren().add(window);
+            watch(windows, macWindow);
+
+            windows.applyCss();
+            windows.layout();
+
+            // 动画期间以截图代替窗口，结束后再换回
+            ImageView proxy = macWindow.createSnapshot();
+
+            ObservableList<Node> children = windows.getChildren();
+            children.set(children.indexOf(window), proxy);
+
+            this.windows = windows;
+            this.window = window;
+            this.proxy = proxy;
 
-        Timeline timeline2 = new Timeline(new KeyFrame(Duration.seconds(0.7),
-                new KeyValue(window.layoutXProperty(),
-                        windows.getWidth() / 2 - halfWidth, Interpolator.LINEAR),
-                new KeyValue(window.layoutYProperty(),
-                        windows.getHeight() / 2 - halfHeight - 100, Interpolator.LINEAR)
-        ));
+            offsetX = window.getLayoutX() - proxy.getLayoutX();
+            offsetY = window.getLayoutY() - proxy.getLayoutY();
 
-        Timeline timeline3 = new Timeline(new KeyFrame(Duration.seconds(0.3),
-                new KeyValue(clip.radiusProperty(),
-                        Math.max(halfWidth, halfHeight) * 5, Interpolator.EASE_OUT)
-        ));
+            double halfWidth = window.getWidth() / 2;
+            double halfHeight = window.getHeight() / 2;
 
-        timeline1.setOnFinished(e -> AUDIO_OPEN.play());
+            double centerX = offsetX + halfWidth;
+            double centerY = offsetY + halfHeight;
 
-        timeline2.setOnFinished(e -> timeline3.play());
-        timeline3.setOnFinished(e -> window.setClip(null));
+            radius = Math.max(halfWidth, halfHeight) * 5;
+
+            clip.setCenterX(centerX);
+            clip.setCenterY(centerY);
+            clip.setRadius(15);
+            proxy.setClip(clip);
+
+            Bounds bounds = windows.sceneToLocal(source.localToScene(source.getBoundsInLocal()));
+
+            proxy.setLayoutX(bounds.getMinX() + bounds.getWidth() / 2 - centerX);
+            proxy.setLayoutY(bounds.getMinY() + bounds.getHeight() / 2 - centerY);
+
+            flip(rotateX, centerX, centerY);
+            flip(rotateY, centerX, centerY);
+            flip(rotateZ, centerX, centerY);
+            proxy.getTransforms().setAll(rotateX, rotateY, rotateZ);
+
+            MacTween.to(rotateX.angleProperty(), 0, 0.5, MacTween.EASE_IN);
+            MacTween.to(rotateY.angleProperty(), 0, 0.5, MacTween.EASE_IN);
+            MacTween.to(rotateZ.angleProperty(), 0, 0.5, MacTween.EASE_IN);
+            MacTween.to(clip.radiusProperty(), 35, 0.5, MacTween.EASE_IN, PLAY_OPEN);
+
+            MacTween.to(proxy.layoutXProperty(), windows.getWidth() / 2 - centerX, 0.7, MacTween.LINEAR);
+            MacTween.to(proxy.layoutYProperty(), windows.getHeight() / 2 - centerY - 100, 0.7, MacTween.LINEAR, expand);
+        }
 
-        timeline1.play();
-        timeline2.play();
+        private void flip(Rotate rotate, double pivotX, double pivotY) {
+            rotate.setAngle(180);
+            rotate.setPivotX(pivotX);
+            rotate.setPivotY(pivotY);
+        }
     }
 
-    public String getName() {
-        return name;
+    /**
+     * 图标节点：图片、圆形边框与倒影，不含任何子项自身的状态
+     */
+    private final static class Cell {
+
+        private final Group group;
+        private final ImageView imageView;
+        private final Reflection reflection;
+
+        public Cell() {
+
+            imageView = new ImageView();
+            imageView.setFitWidth(BASE_SIZE * 2);
+            imageView.setFitHeight(BASE_SIZE * 2);
+            imageView.setClip(new Circle(BASE_SIZE, BASE_SIZE, BASE_SIZE));
+
+            group = new Group(imageView, createCircleBorder());
+            group.setManaged(false);
+
+            reflection = new Reflection(BASE_TOP_OFFSET, BASE_FRACTION, 0.4, 0);
+
+            group.effectProperty().bind(Bindings.createObjectBinding(
+                    () -> MacQuality.getTier().isReflections() ? reflection : null,
+                    MacQuality.tierProperty()
+            ));
+        }
+
+        private static Shape createCircleBorder() {
+
+            // 所有子项尺寸相同，共享同一份路径
+            Shape shape = MacShapeCache.ring(BASE_SIZE, BASE_SIZE - 10);
+            shape.setFill(Color.WHITE);
+            shape.setStroke(Color.LIGHTGRAY);
+            shape.setStrokeWidth(2.5);
+            shape.setLayoutX(BASE_SIZE);
+            shape.setLayoutY(BASE_SIZE);
+
+            return shape;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,297 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.beans.InvalidationListener;
+import javafx.geometry.Insets;
+import javafx.scene.Node;
+import javafx.scene.layout.Region;
+import javafx.stage.Screen;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <h2>Dock栏子项容器</h2>
+ * <p>按各子项的放大等级，直接计算位置与尺寸，每个脉冲至多布局一次；布局完成后同步更新几何索引。</p>
+ * <p>子项超出场景宽度所能容纳的数量时，只显示连续的一段，可滚动，场景宽度变化时重新计算；只有显示中的子项持有图标节点，移出的子项将图标节点归还复用。</p>
+ * <p>放大等级、几何索引的下标均为显示中的序号，而非子项在全部子项中的序号。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacDockPane extends Region {
+
+    // Dock栏最多占场景宽度的比例
+    private final static double MAX_WIDTH_RATIO = 0.8;
+
+    // 子项未放大时的宽度估计，含内边距
+    private final static double MIN_SLOT_WIDTH = MacDockItem.getMinIconSize() + 10;
+
+    private final MacDockIndex index;
+
+    // 同时显示的子项数量上限
+    private int capacity;
+
+    private final InvalidationListener widthListener;
+
+    private List<MacDockItem> items;
+
+    // 显示中的第一个子项，及显示的数量
+    private int first;
+    private int count;
+
+    private int[] levels;
+
+    // 上一次悬停更新的子项范围
+    private int lastFrom;
+    private int lastTo;
+
+    public MacDockPane(MacDockIndex index) {
+
+        this.index = index;
+
+        // 加入场景之前，按屏幕宽度估计
+        capacity = capacityOf(Screen.getPrimary().getVisualBounds().getWidth());
+
+        items = Collections.emptyList();
+        levels = new int[0];
+
+        widthListener = it -> setAvailableWidth(getScene().getWidth());
+
+        sceneProperty().addListener((observable, oldValue, newValue) -> {
+
+            if (oldValue != null) {
+                oldValue.widthProperty().removeListener(widthListener);
+            }
+
+            if (newValue != null) {
+                newValue.widthProperty().addListener(widthListener);
+                setAvailableWidth(newValue.getWidth());
+            }
+        });
+    }
+
+    private static int capacityOf(double width) {
+        return Math.max(1, (int) (width * MAX_WIDTH_RATIO / MIN_SLOT_WIDTH));
+    }
+
+    /**
+     * 按可用的宽度重新计算显示的数量，有变化时保持第一个子项不变，放不下时前移
+     */
+    private void setAvailableWidth(double width) {
+
+        if (width <= 0) {
+            return;
+        }
+
+        int capacity = capacityOf(width);
+
+        if (capacity == this.capacity) {
+            return;
+        }
+
+        this.capacity = capacity;
+
+        show(Math.max(0, Math.min(first, items.size() - capacity)));
+    }
+
+    public void setItems(List<MacDockItem> items) {
+
+        for (int i = first; i < first + count; i++) {
+            this.items.get(i).release();
+        }
+
+        this.items = items;
+
+        first = 0;
+        count = 0;
+
+        show(0);
+    }
+
+    /**
+     * 向后（正数）或向前（负数）滚动若干个子项，返回是否有变化
+     */
+    public boolean scroll(int delta) {
+
+        int target = Math.max(0, Math.min(items.size() - count, first + delta));
+
+        if (target == first) {
+            return false;
+        }
+
+        show(target);
+
+        return true;
+    }
+
+    /**
+     * 显示中的第几个子项
+     */
+    public MacDockItem getItem(int index) {
+        return items.get(first + index);
+    }
+
+    private void show(int from) {
+
+        int size = Math.min(capacity, items.size() - from);
+
+        // 先归还移出的，再取用移入的，使节点得以复用
+        for (int i = first; i < first + count; i++) {
+            if (i < from || i >= from + size) {
+                items.get(i).release();
+            }
+        }
+
+        Node[] nodes = new Node[size];
+        for (int i = 0; i < size; i++) {
+
+            MacDockItem item = items.get(from + i);
+            item.realize();
+
+            nodes[i] = item.asNode();
+        }
+
+        first = from;
+        count = size;
+
+        levels = new int[size];
+        lastFrom = lastTo = 0;
+
+        index.ensureCapacity(size);
+        index.invalidate();
+
+        getChildren().setAll(nodes);
+    }
+
+    /**
+     * 设置子项的放大比例，实际的缩放与定位在下一次布局时完成
+     */
+    public void setPercent(int index, double percent) {
+
+        int level = MacDockItem.toLevel(percent);
+
+        if (levels[index] != level) {
+            levels[index] = level;
+            requestLayout();
+        }
+    }
+
+    /**
+     * 鼠标悬停于容器坐标(x, y)：视距内的子项按到鼠标的距离放大，离开视距的恢复原状；返回选中的子项，没有时返回-1
+     */
+    public int hover(double x, double y, double percentY) {
+
+        // 仅视距内的子项需要更新
+        int from = index.lowerBound(x - MacDock.EYE_DISTANCE);
+        int to = index.upperBound(x + MacDock.EYE_DISTANCE);
+
+        // 离开视距的，恢复原状
+        for (int i = lastFrom; i < lastTo; i++) {
+            if (i < from || i >= to) {
+                setPercent(i, 0);
+            }
+        }
+
+        lastFrom = from;
+        lastTo = to;
+
+        for (int i = from; i < to; i++) {
+
+            // 鼠标到近边的距离
+            double percentX = 1 - index.distance(i, x) / MacDock.EYE_DISTANCE;
+
+            setPercent(i, percentX * percentY);
+        }
+
+        int selected = index.indexAt(x, y);
+
+        // 当前选中
+        if (selected >= 0) {
+            setPercent(selected, 1 * percentY);
+        }
+
+        return selected;
+    }
+
+    public void reset() {
+
+        for (int i = 0; i < levels.length; i++) {
+            setPercent(i, 0);
+        }
+
+        lastFrom = lastTo = 0;
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+
+        Insets insets = getInsets();
+        double width = insets.getLeft() + insets.getRight();
+
+        for (int i = 0; i < levels.length; i++) {
+            width += getItem(i).getSlotWidth(levels[i]);
+        }
+
+        return width;
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+
+        Insets insets = getInsets();
+        double height = 0;
+
+        for (int i = 0; i < levels.length; i++) {
+            height = Math.max(height, getItem(i).getSlotHeight(levels[i]));
+        }
+
+        return insets.getTop() + height + insets.getBottom();
+    }
+
+    @Override
+    protected void layoutChildren() {
+
+        Insets insets = getInsets();
+
+        // 所有子项底部对齐
+        double bottom = getHeight() - insets.getBottom();
+        double x = insets.getLeft();
+
+        for (int i = 0; i < levels.length; i++) {
+
+            MacDockItem item = getItem(i);
+            int level = levels[i];
+
+            item.setLevel(level);
+
+            double width = item.getSlotWidth(level);
+            double height = item.getSlotHeight(level);
+            double y = bottom - height;
+
+            item.asNode().resizeRelocate(x, y, width, height);
+            item.layoutSlot(width, height);
+
+            index.set(i, x, y, x + width, bottom);
+
+            x += width;
+        }
+
+        index.setSize(levels.length);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+
+/**
+ * <h2>神奇效果</h2>
+ * <p>把窗口截图切成若干水平条带，每帧只计算条带的位置与宽高，使窗口沿曲线流入Dock栏子项。</p>
+ * <p>整个过程只渲染一张图片，不再对窗口本身施加效果。条带节点只创建一次，再次最小化时换上新的截图即可。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacGenie {
+
+    private final static int ROWS = 32;
+
+    // 收缩阶段与下落阶段的分界，两者有所重叠
+    private final static double SQUEEZE_END = 0.45;
+    private final static double SLIDE_START = 0.3;
+
+    private final static double TARGET_WIDTH = 20;
+
+    private final Group root;
+    private final ImageView[] strips;
+
+    private double left;
+    private double top;
+    private double width;
+    private double height;
+
+    private double targetX;
+    private double targetY;
+
+    /**
+     * @param snapshot 已放置在窗口位置上的窗口截图
+     */
+    public MacGenie(ImageView snapshot) {
+
+        strips = new ImageView[ROWS];
+
+        for (int i = 0; i < ROWS; i++) {
+
+            ImageView strip = new ImageView();
+            strip.setManaged(false);
+
+            strips[i] = strip;
+        }
+
+        root = new Group(strips);
+        root.setManaged(false);
+        root.setMouseTransparent(true);
+
+        setSnapshot(snapshot);
+    }
+
+    /**
+     * 换上新的截图，截图尺寸未变时沿用原有的切分
+     */
+    public void setSnapshot(ImageView snapshot) {
+
+        Image image = snapshot.getImage();
+
+        left = snapshot.getLayoutX();
+        top = snapshot.getLayoutY();
+        width = snapshot.getFitWidth();
+        height = snapshot.getFitHeight();
+
+        Rectangle2D viewport = strips[0].getViewport();
+        boolean sameSize = viewport != null
+                && viewport.getWidth() == image.getWidth() && viewport.getHeight() == image.getHeight() / ROWS;
+
+        double rowHeight = image.getHeight() / ROWS;
+
+        for (int i = 0; i < ROWS; i++) {
+
+            ImageView strip = strips[i];
+            strip.setImage(image);
+
+            if (!sameSize) {
+                strip.setViewport(new Rectangle2D(0, rowHeight * i, image.getWidth(), rowHeight));
+            }
+        }
+    }
+
+    public Node asNode() {
+        return root;
+    }
+
+    /**
+     * 收缩的目标点，背景坐标系
+     */
+    public void setTarget(double x, double y) {
+        this.targetX = x;
+        this.targetY = y;
+    }
+
+    /**
+     * 动画途经的区域
+     */
+    public Bounds getDirtyBounds() {
+
+        double minX = Math.min(left, targetX - TARGET_WIDTH);
+        double minY = Math.min(top, targetY);
+        double maxX = Math.max(left + width, targetX + TARGET_WIDTH);
+        double maxY = Math.max(top + height, targetY);
+
+        return new BoundingBox(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * @param progress 0为窗口原状，1为完全收入目标点
+     */
+    public void update(double progress) {
+
+        double squeeze = smooth(Math.min(1, progress / SQUEEZE_END));
+        double slide = smooth(Math.max(0, (progress - SLIDE_START) / (1 - SLIDE_START)));
+
+        double rowHeight = height / ROWS;
+
+        for (int i = 0; i < ROWS; i++) {
+
+            double y0 = rowY(top + rowHeight * i, slide);
+            double y1 = rowY(top + rowHeight * (i + 1), slide);
+
+            ImageView strip = strips[i];
+
+            // 已流入目标点
+            if (y1 - y0 < 0.1) {
+                strip.setVisible(false);
+                continue;
+            }
+
+            // 越靠近目标点，收缩越多
+            double curve = squeeze * smooth(Math.min(1, Math.abs((y0 + y1) / 2 - top)
+                    / Math.max(1, Math.abs(targetY - top))));
+
+            double x0 = lerp(left, targetX - TARGET_WIDTH / 2, curve);
+            double x1 = lerp(left + width, targetX + TARGET_WIDTH / 2, curve);
+
+            strip.setVisible(true);
+            strip.setLayoutX(x0);
+            strip.setLayoutY(y0);
+            strip.setFitWidth(Math.max(0.1, x1 - x0));
+            strip.setFitHeight(y1 - y0);
+        }
+    }
+
+    private double rowY(double y, double slide) {
+
+        double moved = y + slide * (targetY - top);
+
+        // 目标点在下方时，越过目标点的部分堆叠在目标点
+        return targetY >= top ? Math.min(targetY, moved) : lerp(y, targetY, slide);
+    }
+
+    private static double smooth(double t) {
+        return t * t * (3 - 2 * t);
+    }
+
+    private static double lerp(double from, double to, double t) {
+        return from + (to - from) * t;
+    }
+}
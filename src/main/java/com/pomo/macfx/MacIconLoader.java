@@ -0,0 +1,159 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h2>图标加载器</h2>
+ * <p>在有限的后台线程中解码图标，解码完成前先使用占位图。</p>
+ * <p>图标直接解码为Dock栏所需的尺寸，结果按内容摘要缓存在磁盘上，之后启动时无需再解码。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacIconLoader {
+
+    private final static int THREADS = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+
+    private final int size;
+
+    private final Image placeholder;
+
+    private final ExecutorService executor;
+
+    // 各图标从请求到可用所耗费的毫秒数
+    private final Map<String, Long> loadTimes;
+
+    /**
+     * @param size 图标在屏幕上的最大逻辑尺寸
+     */
+    public MacIconLoader(double size) {
+
+        this.size = (int) Math.ceil(size * MacOSApp.getRenderScale());
+
+        WritableImage image = new WritableImage(1, 1);
+        image.getPixelWriter().setColor(0, 0, Color.rgb(209, 207, 210));
+        placeholder = image;
+
+        executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "mac-fx-icon-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        loadTimes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 立即返回占位图，解码完成后在FX线程中替换为真实图片
+     */
+    public ObservableValue<Image> load(String url) {
+
+        ReadOnlyObjectWrapper<Image> wrapper = new ReadOnlyObjectWrapper<>(placeholder);
+
+        long start = System.nanoTime();
+
+        executor.execute(() -> {
+
+            Image image = decode(url);
+
+            if (image == null) {
+                return;
+            }
+
+            Platform.runLater(() -> {
+                wrapper.set(image);
+                loadTimes.put(url, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            });
+        });
+
+        return wrapper.getReadOnlyProperty();
+    }
+
+    /**
+     * 优先读取磁盘缓存；未命中时按目标尺寸解码，并写入缓存
+     */
+    private Image decode(String url) {
+
+        byte[] bytes;
+
+        try {
+
+            bytes = MacDiskCache.readResource(url);
+
+        } catch (IOException e) {
+
+            return null;
+        }
+
+        Path file = null;
+
+        try {
+
+            file = MacDiskCache.dir("icons").resolve(MacDiskCache.hash(bytes) + "-" + size + ".bgra");
+
+            Image cached = MacDiskCache.readImage(file);
+            if (cached != null) {
+                return cached;
+            }
+
+        } catch (IOException ignored) {
+
+            // 缓存不可用，直接解码
+        }
+
+        Image image = new Image(new ByteArrayInputStream(bytes), size, size, true, true);
+
+        if (image.isError()) {
+            return null;
+        }
+
+        if (file != null) {
+
+            try {
+
+                MacDiskCache.writeImage(file, image);
+
+            } catch (IOException ignored) {
+
+                // 下次启动再试
+            }
+        }
+
+        return image;
+    }
+
+    public Map<String, Long> getLoadTimes() {
+        return Collections.unmodifiableMap(loadTimes);
+    }
+}
@@ -17,11 +17,11 @@
  */
 package com.pomo.macfx;
 
+import javafx.beans.value.ObservableValue;
 import javafx.scene.Node;
 import javafx.scene.control.Button;
 import javafx.scene.control.Separator;
 import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
@@ -33,20 +33,24 @@ import javafx.scene.layout.VBox;
  */
 public final class MacImageWindow extends MacWindow {
 
-    public MacImageWindow(MacBackground macBackground, Node source, Image image, String name, String url) {
+    public MacImageWindow(MacBackground macBackground, Node source, ObservableValue<Image> image, String name, String url) {
         super(macBackground, name, source, createContent(macBackground, image, url));
     }
 
-    private static Node createContent(MacBackground macBackground, Image image, String url) {
+    private static Node createContent(MacBackground macBackground, ObservableValue<Image> image, String url) {
 
-        ImageView imageView = new ImageView(image);
+        // 先显示缩略图，再按需分块解码原图
+        MacTileViewer viewer = new MacTileViewer(macBackground, image, url);
 
-        StackPane imageContainer = new StackPane(imageView);
+        StackPane imageContainer = new StackPane(viewer);
         imageContainer.getStyleClass().add("image-container");
         imageContainer.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
 
         Separator separator = new Separator();
 
+        // 打开了窗口，大概率会应用为背景
+        macBackground.prefetch(url);
+
         Button button = new Button("应用为背景");
         button.setOnAction(e -> macBackground.setImage(url));
 
@@ -0,0 +1,146 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import java.util.Arrays;
+
+/**
+ * <h2>以long为键的散列表</h2>
+ * <p>开放寻址，线性探测，负载不超过一半，删除时后移同簇的项；查找、插入均不装箱。仅可在单一线程中使用。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacLongMap<V> {
+
+    private long[] keys = new long[16];
+    private Object[] values = new Object[16];
+
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+
+        int mask = keys.length - 1;
+
+        for (int i = index(key, mask); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+
+        return null;
+    }
+
+    public void put(long key, V value) {
+
+        // 负载不超过一半
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+
+        int mask = keys.length - 1;
+        int i = index(key, mask);
+
+        while (values[i] != null) {
+
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+
+        if (size > 0) {
+            Arrays.fill(values, null);
+            size = 0;
+        }
+    }
+
+    public void remove(long key) {
+
+        int mask = keys.length - 1;
+        int i = index(key, mask);
+
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+
+        if (values[i] == null) {
+            return;
+        }
+
+        values[i] = null;
+        size--;
+
+        // 之后同簇的项，若其理想位置不在空位之后，前移填补空位
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+
+            int k = index(keys[j], mask);
+
+            boolean stays = i <= j ? i < k && k <= j : i < k || k <= j;
+            if (stays) {
+                continue;
+            }
+
+            keys[i] = keys[j];
+            values[i] = values[j];
+            values[j] = null;
+            i = j;
+        }
+    }
+
+    private void grow() {
+
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        keys = new long[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+
+                int mask = keys.length - 1;
+                int j = index(oldKeys[i], mask);
+
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private static int index(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
@@ -18,14 +18,18 @@
 package com.pomo.macfx;
 
 import javafx.application.Application;
+import javafx.beans.value.ObservableValue;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.ImageCursor;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.image.Image;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.StackPane;
+import javafx.stage.Screen;
 import javafx.stage.Stage;
 
 import java.util.List;
@@ -51,7 +55,10 @@ public class MacOSApp extends Application {
         primaryStage.getIcons().add(new Image("/com/pomo/macfx/icon.jpg"));
 
         // region {背景}
-        MacBackground macBackground = new MacBackground("/com/pomo/macfx/img/original/1.jpg");
+        List<String> wallpapers = IntStream.range(1, 9)
+                .mapToObj(MacOSApp::getOriginalPath)
+                .collect(Collectors.toList());
+        MacBackground macBackground = new MacBackground(wallpapers, getOriginalPath(1));
         Region bg = macBackground.asNode();
         // endregion
 
@@ -71,11 +78,27 @@ public class MacOSApp extends Application {
         macDock.toBottomProperty().addListener((observable, oldValue, newValue) ->
                 StackPane.setMargin(dock, new Insets(0, 0, newValue.doubleValue(), 0)));
 
-        root.getChildren().addAll(bg, topBar, dock);
+        MacIconLoader iconLoader = new MacIconLoader(MacDockItem.getMaxIconSize());
+
+        // region {性能面板}
+        MacPerfHud perfHud = new MacPerfHud(macBackground, macDock, iconLoader);
+        Node hud = perfHud.asNode();
+        StackPane.setAlignment(hud, Pos.TOP_RIGHT);
+        StackPane.setMargin(hud, new Insets(50, 20, 0, 0));
+        // endregion
+
+        root.getChildren().addAll(bg, topBar, dock, hud);
 
         Scene scene = new Scene(root, 1366, 866);
         scene.getStylesheets().add("com/pomo/macfx/dock.css");
 
+        // F3开关性能面板
+        scene.addEventFilter(KeyEvent.KEY_PRESSED, e -> {
+            if (e.getCode() == KeyCode.F3) {
+                perfHud.toggle();
+            }
+        });
+
         Image cursor = new Image("/com/pomo/macfx/cursor.png");
         scene.setCursor(new ImageCursor(cursor));
 
@@ -83,17 +106,20 @@ public class MacOSApp extends Application {
         primaryStage.setTitle("JavaFX 仿 macOS 桌面");
         primaryStage.show();
 
+        MacSound.preload();
+
         List<MacDockItem> items = IntStream.range(1, 9)
-                .mapToObj(it -> createImageDockItem(macBackground, it))
+                .mapToObj(it -> createImageDockItem(macBackground, iconLoader, it))
                 .collect(Collectors.toList());
-        items.add(createSettingDockItem(macBackground, macDock));
+        items.add(createSettingDockItem(macBackground, iconLoader, macDock));
 
         macDock.setItems(items);
     }
 
-    private static MacDockItem createSettingDockItem(MacBackground macBackground, MacDock macDock) {
+    private static MacDockItem createSettingDockItem(MacBackground macBackground, MacIconLoader iconLoader,
+                                                     MacDock macDock) {
 
-        Image image = new Image("/com/pomo/macfx/img/setting.jpg");
+        ObservableValue<Image> image = iconLoader.load("/com/pomo/macfx/img/setting.jpg");
         String name = "设置";
 
 
@@ -102,9 +128,9 @@ public class MacOSApp extends Application {
         );
     }
 
-    private static MacDockItem createImageDockItem(MacBackground macBackground, int no) {
+    private static MacDockItem createImageDockItem(MacBackground macBackground, MacIconLoader iconLoader, int no) {
 
-        Image image = new Image("/com/pomo/macfx/img/" + no + ".jpg");
+        ObservableValue<Image> image = iconLoader.load("/com/pomo/macfx/img/" + no + ".jpg");
         String name = "图片：" + no + ".jpg";
 
         return new MacDockItem(macBackground, image, name,
@@ -112,6 +138,17 @@ public class MacOSApp extends Application {
         );
     }
 
+    /**
+     * 屏幕的缩放比例，以96dpi为1倍
+     */
+    static double getRenderScale() {
+
+        double scale = Screen.getPrimary().getDpi() / 96;
+
+        // 取0.25的整数倍，避免因dpi的细微差异产生不同的缓存
+        return Math.max(1, Math.round(scale * 4) / 4.0);
+    }
+
     private static String getOriginalPath(int no) {
         return "/com/pomo/macfx/img/original/" + no + ".jpg";
     }
@@ -0,0 +1,214 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.control.Label;
+import javafx.scene.layout.Region;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h2>性能面板</h2>
+ * <p>叠加在桌面之上，每秒刷新一次：帧率、帧耗时的分位数、背景重绘与玻璃板截图的频率、节点数、运行中的补间数、图标加载耗时及堆内存。</p>
+ * <p>面板可见时，自身会持续请求脉冲；隐藏后不产生任何开销。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacPerfHud {
+
+    private final static long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // 一秒内最多记录的帧数
+    private final static int CAPACITY = 512;
+
+    private final MacBackground macBackground;
+    private final MacDock macDock;
+    private final MacIconLoader iconLoader;
+
+    private final Label root;
+
+    private final AnimationTimer timer;
+
+    private final long[] intervals;
+    private final long[] sorted;
+    private int count;
+
+    private long lastFrame;
+    private long windowStart;
+
+    private long lastRequested;
+    private long lastActual;
+    private long lastSnapshots;
+
+    public MacPerfHud(MacBackground macBackground, MacDock macDock, MacIconLoader iconLoader) {
+
+        this.macBackground = macBackground;
+        this.macDock = macDock;
+        this.iconLoader = iconLoader;
+
+        intervals = new long[CAPACITY];
+        sorted = new long[CAPACITY];
+
+        root = new Label();
+        root.getStyleClass().add("perf-hud");
+        root.setMouseTransparent(true);
+        root.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+        root.setVisible(false);
+
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                frame(now);
+            }
+        };
+    }
+
+    public Node asNode() {
+        return root;
+    }
+
+    public void toggle() {
+
+        boolean visible = !root.isVisible();
+        root.setVisible(visible);
+
+        if (visible) {
+
+            lastFrame = 0;
+            windowStart = 0;
+            count = 0;
+            root.setText("统计中…");
+            timer.start();
+
+        } else {
+
+            timer.stop();
+        }
+    }
+
+    private void frame(long now) {
+
+        if (windowStart == 0) {
+
+            windowStart = now;
+            lastRequested = macBackground.getRequestedRepaints();
+            lastActual = macBackground.getActualRepaints();
+            lastSnapshots = macDock.getSnapshotCount();
+
+        } else if (count < CAPACITY) {
+
+            intervals[count++] = now - lastFrame;
+        }
+
+        lastFrame = now;
+
+        if (now - windowStart >= SECOND) {
+            update(now);
+        }
+    }
+
+    private void update(long now) {
+
+        double seconds = (double) (now - windowStart) / SECOND;
+
+        System.arraycopy(intervals, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+
+        long requested = macBackground.getRequestedRepaints();
+        long actual = macBackground.getActualRepaints();
+        long snapshots = macDock.getSnapshotCount();
+
+        // 图标从请求到可用的耗时
+        long loaded = 0;
+        long totalLoad = 0;
+        long maxLoad = 0;
+        for (long time : iconLoader.getLoadTimes().values()) {
+            loaded++;
+            totalLoad += time;
+            maxLoad = Math.max(maxLoad, time);
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+
+        root.setText(String.format(
+                "帧率：%.0f%n" +
+                        "帧耗时 p50/p95/p99：%.1f / %.1f / %.1f ms%n" +
+                        "重绘请求：%.0f/s，实际：%.0f/s%n" +
+                        "玻璃板截图：%.0f/s%n" +
+                        "节点：%d%n" +
+                        "窗口：%d，遮挡：%d%n" +
+                        "补间：%d%n" +
+                        "画质：%s%n" +
+                        "图标：%d 个，平均/最慢：%d / %d ms%n" +
+                        "堆：%d / %d MB",
+                count / seconds,
+                percentile(0.5), percentile(0.95), percentile(0.99),
+                (requested - lastRequested) / seconds, (actual - lastActual) / seconds,
+                (snapshots - lastSnapshots) / seconds,
+                countNodes(root.getScene() == null ? null : root.getScene().getRoot()),
+                macBackground.getWindowManager().getWindowCount(),
+                macBackground.getWindowManager().getOccludedCount(),
+                MacTween.getActiveCount(),
+                MacQuality.getTier(),
+                loaded, loaded == 0 ? 0 : totalLoad / loaded, maxLoad,
+                used >> 20, runtime.maxMemory() >> 20
+        ));
+
+        windowStart = now;
+        count = 0;
+        lastRequested = requested;
+        lastActual = actual;
+        lastSnapshots = snapshots;
+    }
+
+    /**
+     * 本秒内帧耗时的分位数，毫秒
+     */
+    private double percentile(double p) {
+
+        if (count == 0) {
+            return 0;
+        }
+
+        int index = Math.min(count - 1, (int) Math.ceil(p * count) - 1);
+
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static int countNodes(Node node) {
+
+        if (node == null) {
+            return 0;
+        }
+
+        int count = 1;
+
+        if (node instanceof Parent) {
+            for (Node child : ((Parent) node).getChildrenUnmodifiable()) {
+                count += countNodes(child);
+            }
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.SimpleObjectProperty;
+
+/**
+ * <h2>画质调节</h2>
+ * <p>自动调节期间统计相邻脉冲的间隔，持续偏慢时降低一档画质，持续流畅时再升回一档；升档比降档需要更长时间的观察，避免来回切换。</p>
+ * <p>采样的计时器按需运行：有重绘或补间时启动，连续若干个脉冲没有活动后停止，空闲的桌面不会因此持续产生脉冲。
+ * 运行期间每个脉冲都采样，间隔即帧耗时；启动后的第一个间隔跨越了空闲期，超过数个垂直同步周期的间隔多为停顿而非持续的慢帧，均不计入。</p>
+ * <p>指定了画质时，停止计时器，不再自动调节。仅可在FX线程中使用。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacQuality {
+
+    // 每个统计窗口的帧数
+    private final static int WINDOW = 60;
+
+    // 间隔超过此值（约4个垂直同步周期），不计入统计
+    private final static long MAX_GAP = 67_000_000L;
+
+    // 连续多少个脉冲没有活动后停止采样
+    private final static int IDLE_PULSES = 8;
+
+    // 平均帧耗时高于此值时降档，低于此值时升档
+    private final static long SLOW_FRAME = 25_000_000L;
+    private final static long FAST_FRAME = 18_000_000L;
+
+    // 连续多少个窗口满足条件才切换
+    private final static int DOWN_WINDOWS = 2;
+    private final static int UP_WINDOWS = 5;
+
+    private final static ReadOnlyObjectWrapper<Tier> TIER = new ReadOnlyObjectWrapper<>(Tier.HIGH);
+
+    // 为null时自动调节
+    private final static ObjectProperty<Tier> OVERRIDE = new SimpleObjectProperty<>();
+
+    // 有活动时运行，每个脉冲采样一次
+    private final static AnimationTimer SAMPLER = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+
+            frame(now);
+
+            if (++idlePulses > IDLE_PULSES) {
+                stop();
+                sampling = false;
+            }
+        }
+    };
+
+    private static boolean sampling;
+
+    // 距上一次活动的脉冲数
+    private static int idlePulses;
+
+    // 自动调节得出的画质
+    private static Tier measured = Tier.HIGH;
+
+    private static long lastFrame;
+
+    private static long total;
+    private static int frames;
+
+    private static int slowWindows;
+    private static int fastWindows;
+
+    private static long lastFrameTime;
+
+    static {
+        OVERRIDE.addListener(it -> apply());
+        apply();
+    }
+
+    private MacQuality() {
+    }
+
+    /**
+     * 有重绘或补间时调用，自动调节期间保持采样
+     */
+    static void active() {
+
+        idlePulses = 0;
+
+        if (!sampling && OVERRIDE.get() == null) {
+
+            sampling = true;
+
+            // 停止期间的间隔不计入
+            lastFrame = 0;
+
+            SAMPLER.start();
+        }
+    }
+
+    /**
+     * 参数为脉冲的时刻
+     */
+    private static void frame(long now) {
+
+        long previous = lastFrame;
+        lastFrame = now;
+
+        long interval = now - previous;
+
+        if (previous == 0 || interval <= 0 || interval > MAX_GAP) {
+            return;
+        }
+
+        lastFrameTime = interval;
+        total += interval;
+
+        if (++frames < WINDOW) {
+            return;
+        }
+
+        long average = total / frames;
+        total = 0;
+        frames = 0;
+
+        if (average > SLOW_FRAME) {
+            fastWindows = 0;
+            if (++slowWindows >= DOWN_WINDOWS) {
+                slowWindows = 0;
+                step(-1);
+            }
+        } else if (average < FAST_FRAME) {
+            slowWindows = 0;
+            if (++fastWindows >= UP_WINDOWS) {
+                fastWindows = 0;
+                step(1);
+            }
+        } else {
+            slowWindows = 0;
+            fastWindows = 0;
+        }
+    }
+
+    private static void step(int delta) {
+
+        Tier[] tiers = Tier.values();
+        int index = Math.max(0, Math.min(tiers.length - 1, measured.ordinal() + delta));
+
+        measured = tiers[index];
+        apply();
+    }
+
+    private static void apply() {
+
+        Tier override = OVERRIDE.get();
+
+        TIER.set(override != null ? override : measured);
+
+        if (override != null) {
+
+            SAMPLER.stop();
+            sampling = false;
+
+        } else {
+
+            // 重新开始统计，下一次活动时开始采样
+            lastFrame = 0;
+            total = 0;
+            frames = 0;
+        }
+    }
+
+    public static Tier getTier() {
+        return TIER.get();
+    }
+
+    public static ReadOnlyObjectProperty<Tier> tierProperty() {
+        return TIER.getReadOnlyProperty();
+    }
+
+    public static ObjectProperty<Tier> overrideProperty() {
+        return OVERRIDE;
+    }
+
+    /**
+     * 最近一帧的耗时，纳秒
+     */
+    public static long getLastFrameTime() {
+        return lastFrameTime;
+    }
+
+    public enum Tier {
+
+        LOW("低", 1, false, 15, 100),
+        MEDIUM("中", 2, true, 30, 33),
+        HIGH("高", MacDock.MAX_BLUR, true, 50, 0);
+
+        private final String text;
+
+        private final int maxBlur;
+        private final boolean reflections;
+        private final double shadowRadius;
+
+        // 玻璃板两次截图的最小间隔，毫秒
+        private final long glassInterval;
+
+        Tier(String text, int maxBlur, boolean reflections, double shadowRadius, long glassInterval) {
+            this.text = text;
+            this.maxBlur = maxBlur;
+            this.reflections = reflections;
+            this.shadowRadius = shadowRadius;
+            this.glassInterval = glassInterval;
+        }
+
+        public int getMaxBlur() {
+            return maxBlur;
+        }
+
+        public boolean isReflections() {
+            return reflections;
+        }
+
+        public double getShadowRadius() {
+            return shadowRadius;
+        }
+
+        public long getGlassInterval() {
+            return glassInterval;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
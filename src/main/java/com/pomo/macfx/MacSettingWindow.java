@@ -17,13 +17,18 @@
  */
 package com.pomo.macfx;
 
+import javafx.beans.binding.Bindings;
 import javafx.geometry.HPos;
+import javafx.geometry.Pos;
 import javafx.geometry.VPos;
 import javafx.scene.Node;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.Slider;
 import javafx.scene.layout.ColumnConstraints;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.RowConstraints;
 import javafx.util.StringConverter;
 
@@ -89,6 +94,41 @@ public class MacSettingWindow extends MacWindow {
         content.addRow(1, new Label("模糊等级："), blurSlider);
         // endregion
 
+        // region {qualityBox}
+        ComboBox<MacQuality.Tier> qualityBox = new ComboBox<>();
+        qualityBox.getItems().add(null);
+        qualityBox.getItems().addAll(MacQuality.Tier.values());
+        qualityBox.setConverter(new StringConverter<MacQuality.Tier>() {
+            @Override
+            public String toString(MacQuality.Tier object) {
+                return object == null ? "自动" : object.toString();
+            }
+
+            @Override
+            public MacQuality.Tier fromString(String string) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        qualityBox.setPromptText("自动");
+        qualityBox.setButtonCell(new ListCell<MacQuality.Tier>() {
+            @Override
+            protected void updateItem(MacQuality.Tier item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(qualityBox.getConverter().toString(item));
+            }
+        });
+        qualityBox.valueProperty().bindBidirectional(MacQuality.overrideProperty());
+
+        // 当前实际生效的画质
+        Label tierLabel = new Label();
+        tierLabel.textProperty().bind(Bindings.concat("当前：", MacQuality.tierProperty()));
+
+        HBox qualityPane = new HBox(10, qualityBox, tierLabel);
+        qualityPane.setAlignment(Pos.CENTER_LEFT);
+
+        content.addRow(2, new Label("画质："), qualityPane);
+        // endregion
+
         ColumnConstraints column1 = new ColumnConstraints();
         column1.setHalignment(HPos.RIGHT);
         content.getColumnConstraints().add(column1);
@@ -99,7 +139,10 @@ public class MacSettingWindow extends MacWindow {
         RowConstraints row2 = new RowConstraints();
         row2.setValignment(VPos.TOP);
 
-        content.getRowConstraints().addAll(row1, row2);
+        RowConstraints row3 = new RowConstraints();
+        row3.setValignment(VPos.CENTER);
+
+        content.getRowConstraints().addAll(row1, row2, row3);
 
         return content;
     }
@@ -0,0 +1,134 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.scene.shape.Circle;
+import javafx.scene.shape.FillRule;
+import javafx.scene.shape.Path;
+import javafx.scene.shape.PathElement;
+import javafx.scene.shape.Polygon;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.shape.Shape;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h2>形状缓存</h2>
+ * <p>布尔运算得到的路径，按类型与取整后的尺寸缓存；相同尺寸的形状共享路径元素，不再重复运算。</p>
+ * <p>仅可在FX线程中使用。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacShapeCache {
+
+    private final static int CAPACITY = 64;
+
+    private final static int KIND_RING = 1;
+    private final static int KIND_TIP = 2;
+
+    private final static Map<Long, Geometry> CACHE = new LinkedHashMap<Long, Geometry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Geometry> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    private MacShapeCache() {
+    }
+
+    /**
+     * 以原点为圆心的圆环
+     */
+    public static Path ring(double outerRadius, double innerRadius) {
+
+        int outer = (int) Math.ceil(outerRadius);
+        int inner = (int) Math.ceil(innerRadius);
+
+        Geometry geometry = CACHE.get(key(KIND_RING, outer, inner));
+
+        if (geometry == null) {
+
+            Shape shape = Shape.subtract(new Circle(0, 0, outer), new Circle(0, 0, inner));
+
+            geometry = new Geometry((Path) shape);
+            CACHE.put(key(KIND_RING, outer, inner), geometry);
+        }
+
+        return geometry.create();
+    }
+
+    /**
+     * 提示框：圆角矩形，底部中间带一个向下的三角
+     */
+    public static Path tip(double contentWidth, double contentHeight) {
+
+        int width = (int) Math.ceil(contentWidth);
+        int height = (int) Math.ceil(contentHeight);
+
+        Geometry geometry = CACHE.get(key(KIND_TIP, width, height));
+
+        if (geometry == null) {
+
+            Rectangle rectangle = new Rectangle(width + 20, height + 10);
+            rectangle.setArcWidth(10);
+            rectangle.setArcHeight(10);
+
+            Polygon polygon = new Polygon(0, 0, 20, 0, 10, 10);
+            polygon.setTranslateX(rectangle.getWidth() / 2 - 10);
+            polygon.setTranslateY(rectangle.getHeight());
+
+            Shape shape = Shape.union(rectangle, polygon);
+
+            geometry = new Geometry((Path) shape);
+            CACHE.put(key(KIND_TIP, width, height), geometry);
+        }
+
+        return geometry.create();
+    }
+
+    private static long key(int kind, int width, int height) {
+        return ((long) kind << 56) | ((long) (width & 0xFFFFFFF) << 28) | (height & 0xFFFFFFF);
+    }
+
+    private final static class Geometry {
+
+        private final PathElement[] elements;
+        private final FillRule fillRule;
+
+        public Geometry(Path path) {
+
+            List<PathElement> list = path.getElements();
+
+            elements = list.toArray(new PathElement[0]);
+            fillRule = path.getFillRule();
+        }
+
+        /**
+         * 新的路径节点，与其他节点共享路径元素
+         */
+        public Path create() {
+
+            Path path = new Path(elements);
+            path.setFillRule(fillRule);
+
+            return path;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.scene.media.AudioClip;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <h2>界面音效</h2>
+ * <p>同时发声的数量有上限，超出时停止最早的一个；同一音效在最小间隔内只播放一次。</p>
+ * <p>音效在后台线程中按需加载，加载完成前的播放请求直接忽略。</p>
+ * <p>仅可在FX线程中播放。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+enum MacSound {
+
+    OPEN("open.wav", 200),
+    RECOVER("recover.wav", 200),
+    MENU("menu.wav", 80),
+    CLOSE("close.wav", 100),
+    MINIMIZE("minimize.wav", 100);
+
+    private final static int VOICES = 3;
+
+    // 各发声位正在播放的音效，及其结束的时刻
+    private final static MacSound[] VOICE_SOUNDS = new MacSound[VOICES];
+    private final static long[] VOICE_ENDS = new long[VOICES];
+
+    private final static ExecutorService LOADER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mac-fx-sound-loader");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final String file;
+
+    private final long minInterval;
+
+    private volatile AudioClip clip;
+
+    // 时长，毫秒
+    private volatile long duration;
+
+    private boolean loading;
+
+    private long lastPlayed = Long.MIN_VALUE / 2;
+
+    MacSound(String file, long minInterval) {
+        this.file = file;
+        this.minInterval = minInterval;
+    }
+
+    /**
+     * 在后台加载全部音效
+     */
+    public static void preload() {
+        for (MacSound sound : values()) {
+            sound.load();
+        }
+    }
+
+    public void play() {
+
+        if (clip == null) {
+            load();
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+
+        if (now - lastPlayed < minInterval) {
+            return;
+        }
+        lastPlayed = now;
+
+        int voice = allocate(now);
+
+        MacSound previous = VOICE_SOUNDS[voice];
+        if (previous != null && VOICE_ENDS[voice] > now) {
+            previous.clip.stop();
+        }
+
+        VOICE_SOUNDS[voice] = this;
+        VOICE_ENDS[voice] = now + duration;
+
+        clip.play();
+    }
+
+    /**
+     * 优先选用同一音效所在的发声位（重新播放，不叠加），其次空闲的，否则选用最早结束的
+     */
+    private int allocate(long now) {
+
+        for (int i = 0; i < VOICES; i++) {
+            if (VOICE_SOUNDS[i] == this) {
+                return i;
+            }
+        }
+
+        int oldest = 0;
+
+        for (int i = 0; i < VOICES; i++) {
+
+            if (VOICE_ENDS[i] <= now) {
+                return i;
+            }
+
+            if (VOICE_ENDS[i] < VOICE_ENDS[oldest]) {
+                oldest = i;
+            }
+        }
+
+        return oldest;
+    }
+
+    private void load() {
+
+        if (loading) {
+            return;
+        }
+        loading = true;
+
+        URL url = MacSound.class.getResource("/com/pomo/macfx/sound/" + file);
+        if (url == null) {
+            return;
+        }
+
+        LOADER.execute(() -> {
+
+            duration = readDuration(url);
+            clip = new AudioClip(url.toExternalForm());
+        });
+    }
+
+    private static long readDuration(URL url) {
+
+        try {
+
+            AudioFileFormat format = AudioSystem.getAudioFileFormat(url);
+
+            float frameRate = format.getFormat().getFrameRate();
+            if (format.getFrameLength() > 0 && frameRate > 0) {
+                return (long) Math.ceil(format.getFrameLength() * 1000 / frameRate);
+            }
+
+        } catch (UnsupportedAudioFileException | IOException ignored) {
+
+            // 按默认时长处理
+        }
+
+        return 1000;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h2>空间索引</h2>
+ * <p>均匀网格：每个对象登记在其外包矩形覆盖的所有格子中，查询时只检查相关格子内的对象。</p>
+ * <p>对象移动时只更新其新旧格子，适合在拖动、动画中频繁更新；格子以long为键，查找时不装箱。仅可在单一线程中使用。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacSpatialGrid<T> {
+
+    private final double cellSize;
+
+    private final MacLongMap<List<Entry<T>>> cells;
+    private final Map<T, Entry<T>> entries;
+
+    // 查询去重的标记，每次查询递增
+    private int stamp;
+
+    public MacSpatialGrid(double cellSize) {
+        this.cellSize = cellSize;
+        cells = new MacLongMap<>();
+        entries = new IdentityHashMap<>();
+    }
+
+    /**
+     * 新增或更新对象的外包矩形
+     */
+    public void put(T value, double minX, double minY, double maxX, double maxY) {
+
+        Entry<T> entry = entries.get(value);
+
+        if (entry == null) {
+            entry = new Entry<>(value);
+            entries.put(value, entry);
+        }
+
+        int cx0 = cell(minX);
+        int cy0 = cell(minY);
+        int cx1 = cell(maxX);
+        int cy1 = cell(maxY);
+
+        // 格子未变，只更新矩形
+        if (!entry.registered || cx0 != entry.cx0 || cy0 != entry.cy0 || cx1 != entry.cx1 || cy1 != entry.cy1) {
+
+            unregister(entry);
+
+            entry.cx0 = cx0;
+            entry.cy0 = cy0;
+            entry.cx1 = cx1;
+            entry.cy1 = cy1;
+
+            register(entry);
+        }
+
+        entry.minX = minX;
+        entry.minY = minY;
+        entry.maxX = maxX;
+        entry.maxY = maxY;
+    }
+
+    public void remove(T value) {
+
+        Entry<T> entry = entries.remove(value);
+
+        if (entry != null) {
+            unregister(entry);
+        }
+    }
+
+    public boolean contains(T value) {
+        return entries.containsKey(value);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 与指定矩形相交的对象，追加到result中
+     */
+    public <C extends List<? super T>> C query(double minX, double minY, double maxX, double maxY, C result) {
+
+        int mark = ++stamp;
+
+        for (int cx = cell(minX), cx1 = cell(maxX); cx <= cx1; cx++) {
+            for (int cy = cell(minY), cy1 = cell(maxY); cy <= cy1; cy++) {
+
+                List<Entry<T>> list = cells.get(key(cx, cy));
+                if (list == null) {
+                    continue;
+                }
+
+                for (int i = 0, size = list.size(); i < size; i++) {
+
+                    Entry<T> entry = list.get(i);
+
+                    if (entry.stamp == mark) {
+                        continue;
+                    }
+                    entry.stamp = mark;
+
+                    if (entry.minX < maxX && entry.maxX > minX && entry.minY < maxY && entry.maxY > minY) {
+                        result.add(entry.value);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private void register(Entry<T> entry) {
+
+        for (int cx = entry.cx0; cx <= entry.cx1; cx++) {
+            for (int cy = entry.cy0; cy <= entry.cy1; cy++) {
+                long key = key(cx, cy);
+                List<Entry<T>> list = cells.get(key);
+
+                if (list == null) {
+                    list = new ArrayList<>(4);
+                    cells.put(key, list);
+                }
+
+                list.add(entry);
+            }
+        }
+
+        entry.registered = true;
+    }
+
+    private void unregister(Entry<T> entry) {
+
+        if (!entry.registered) {
+            return;
+        }
+
+        for (int cx = entry.cx0; cx <= entry.cx1; cx++) {
+            for (int cy = entry.cy0; cy <= entry.cy1; cy++) {
+
+                long key = key(cx, cy);
+                List<Entry<T>> list = cells.get(key);
+
+                if (list != null && list.remove(entry) && list.isEmpty()) {
+                    cells.remove(key);
+                }
+            }
+        }
+
+        entry.registered = false;
+    }
+
+    private int cell(double value) {
+        return (int) Math.floor(value / cellSize);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    private final static class Entry<T> {
+
+        private final T value;
+
+        private double minX;
+        private double minY;
+        private double maxX;
+        private double maxY;
+
+        private int cx0;
+        private int cy0;
+        private int cx1;
+        private int cy1;
+
+        private boolean registered;
+
+        private int stamp;
+
+        private Entry(T value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.application.Platform;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * <h2>低频时钟</h2>
+ * <p>在每秒的整点唤醒一次，于FX线程中通知订阅者；没有订阅者时不再唤醒。</p>
+ * <p>不依赖动画脉冲，桌面空闲时不会产生任何脉冲。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacTicker {
+
+    private final static long PERIOD = 1000;
+
+    private final static ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mac-fx-ticker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final static List<LongConsumer> SUBSCRIBERS = new CopyOnWriteArrayList<>();
+
+    // 已安排的下一次唤醒
+    private static ScheduledFuture<?> next;
+
+    private MacTicker() {
+    }
+
+    /**
+     * 订阅每秒一次的通知，参数为当前时刻的毫秒数；订阅时立即通知一次
+     *
+     * @return 调用即取消订阅
+     */
+    public static Runnable subscribe(LongConsumer subscriber) {
+
+        SUBSCRIBERS.add(subscriber);
+        subscriber.accept(System.currentTimeMillis());
+
+        synchronized (MacTicker.class) {
+            if (next == null) {
+                schedule();
+            }
+        }
+
+        return () -> SUBSCRIBERS.remove(subscriber);
+    }
+
+    /**
+     * 延迟一段时间后，在FX线程中执行
+     */
+    public static ScheduledFuture<?> later(long delay, TimeUnit unit, Runnable task) {
+        return EXECUTOR.schedule(() -> Platform.runLater(task), delay, unit);
+    }
+
+    /**
+     * 对齐到下一秒的整点，每次重新计算，不会累积误差
+     */
+    private static void schedule() {
+
+        long delay = PERIOD - System.currentTimeMillis() % PERIOD;
+
+        next = EXECUTOR.schedule(MacTicker::tick, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static void tick() {
+
+        synchronized (MacTicker.class) {
+
+            if (SUBSCRIBERS.isEmpty()) {
+                next = null;
+                return;
+            }
+
+            schedule();
+        }
+
+        Platform.runLater(() -> {
+
+            long now = System.currentTimeMillis();
+
+            for (LongConsumer subscriber : SUBSCRIBERS) {
+                subscriber.accept(now);
+            }
+        });
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * <h2>分块解码器</h2>
+ * <p>按层级与行列解码原图的一块区域：第n层每隔2^n个像素采样一次，每块为TILE见方；同一行的相邻块一次读出再切分。</p>
+ * <p>只读取所需的区域，不会分配整张原图的内存。已生成分块金字塔时直接从中复制像素，否则解码原图，并在后台生成金字塔。</p>
+ * <p>仅可在同一个后台线程中使用。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacTileDecoder {
+
+    // 每块的边长，采样后的像素
+    static final int TILE = 256;
+
+    private final String url;
+
+    private MacTilePyramid pyramid;
+
+    private InputStream stream;
+    private ImageInputStream in;
+    private ImageReader reader;
+
+    private int width;
+    private int height;
+
+    public MacTileDecoder(String url) {
+        this.url = url;
+    }
+
+    /**
+     * 读取原图的尺寸，已打开时不做任何事
+     */
+    public void open() throws IOException {
+
+        if (reader != null || pyramid != null) {
+            return;
+        }
+
+        pyramid = MacTilePyramid.find(url);
+
+        if (pyramid != null) {
+            width = pyramid.getWidth();
+            height = pyramid.getHeight();
+            return;
+        }
+
+        // 下次打开时即可使用
+        MacTilePyramid.prepare(url);
+
+        stream = MacTileDecoder.class.getResourceAsStream(url);
+        if (stream == null) {
+            throw new IOException("resource not found: " + url);
+        }
+
+        try {
+
+            in = ImageIO.createImageInputStream(stream);
+
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("unsupported image: " + url);
+            }
+
+            ImageReader reader = readers.next();
+            reader.setInput(in, false, true);
+
+            width = reader.getWidth(0);
+            height = reader.getHeight(0);
+
+            this.reader = reader;
+
+        } finally {
+
+            if (reader == null) {
+                close();
+            }
+        }
+    }
+
+    /**
+     * 释放读取器与输入流，之后仍可重新打开
+     */
+    public void close() {
+
+        // 映射由金字塔共享，无需释放
+        pyramid = null;
+
+        if (reader != null) {
+            reader.dispose();
+            reader = null;
+        }
+
+        try {
+
+            if (in != null) {
+                in.close();
+            }
+            if (stream != null) {
+                stream.close();
+            }
+
+        } catch (IOException ignored) {
+
+            // 只读的资源，关闭失败无妨
+        }
+
+        in = null;
+        stream = null;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 解码第row行中[fromCol, toCol)的各块，超出原图的块为null
+     */
+    public Image[] decodeRow(int level, int row, int fromCol, int toCol) throws IOException {
+
+        open();
+
+        int step = 1 << level;
+        int span = TILE * step;
+
+        int x = fromCol * span;
+        int y = row * span;
+
+        Image[] tiles = new Image[toCol - fromCol];
+
+        if (x >= width || y >= height) {
+            return tiles;
+        }
+
+        if (pyramid != null) {
+
+            for (int i = 0; i < tiles.length && fromCol + i < pyramid.getCols(level); i++) {
+                tiles[i] = pyramid.readTile(level, fromCol + i, row);
+            }
+
+            return tiles;
+        }
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(x, y, Math.min(toCol * span, width) - x, Math.min(span, height - y)));
+        param.setSourceSubsampling(step, step, 0, 0);
+
+        BufferedImage strip = reader.read(0, param);
+
+        int stripHeight = strip.getHeight();
+        int[] pixels = new int[TILE * stripHeight];
+
+        for (int i = 0; i < tiles.length; i++) {
+
+            int tileX = i * TILE;
+            int tileWidth = Math.min(TILE, strip.getWidth() - tileX);
+
+            if (tileWidth <= 0) {
+                break;
+            }
+
+            strip.getRGB(tileX, 0, tileWidth, stripHeight, pixels, 0, tileWidth);
+
+            WritableImage tile = new WritableImage(tileWidth, stripHeight);
+            tile.getPixelWriter().setPixels(0, 0, tileWidth, stripHeight,
+                    PixelFormat.getIntArgbInstance(), pixels, 0, tileWidth);
+
+            tiles[i] = tile;
+        }
+
+        return tiles;
+    }
+
+    /**
+     * 最粗的层级，此时整张图只有一块
+     */
+    public static int getMaxLevel(int width, int height) {
+
+        int level = 0;
+        while (((Math.max(width, height) - 1) >> level) + 1 > TILE) {
+            level++;
+        }
+
+        return level;
+    }
+}
@@ -0,0 +1,738 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <h2>分块金字塔</h2>
+ * <p>原图的各个层级按块保存在磁盘缓存的单个文件中：第n层为原图的1/2^n，每块为TILE见方的BGRA预乘像素，读取时无需解码。</p>
+ * <p>文件以内存映射的方式读取，每一行块单独映射，任意层级、任意区域都只复制所需的像素，不占用堆内存。</p>
+ * <p>首次使用时在后台生成：第0层一次解码原图，过大时按行条带解码，其余各层由上一层2x2取平均得到。</p>
+ * <p>同一原图只保留最新的文件；所有文件的总大小超出上限时，删除最久未打开的。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacTilePyramid {
+
+    private final static int MAGIC = 0x4D465850; // MFXP
+
+    private final static int HEADER = 20;
+
+    private final static int TILE = MacTileDecoder.TILE;
+
+    // 生成第0层时，每次解码的内存上限：不低于64MB，且不超过最大堆的1/4
+    private final static long STRIP_BUDGET = Math.max(64L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 4);
+
+    private final static String SUFFIX = ".mfxp";
+
+    // 所有金字塔文件的总大小上限
+    private final static long DISK_BUDGET = 1024L * 1024 * 1024;
+
+    // 已打开的，按资源路径
+    private final static Map<String, MacTilePyramid> OPENED = new HashMap<>();
+
+    // 正在生成的
+    private final static Set<String> BUILDING = new HashSet<>();
+
+    private final static ExecutorService BUILDER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mac-fx-pyramid-builder");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final Layout layout;
+
+    // 各层级、各行块的映射
+    private final MappedByteBuffer[][] rows;
+
+    private MacTilePyramid(Layout layout, MappedByteBuffer[][] rows) {
+        this.layout = layout;
+        this.rows = rows;
+    }
+
+    // region {打开与生成}
+
+    /**
+     * 已生成时返回，否则返回null，不会触发生成
+     */
+    public static synchronized MacTilePyramid find(String url) {
+
+        MacTilePyramid pyramid = OPENED.get(url);
+
+        if (pyramid == null) {
+
+            Path file;
+
+            try {
+
+                file = fileOf(url);
+                pyramid = open(file);
+
+            } catch (IOException e) {
+
+                return null;
+            }
+
+            if (pyramid != null) {
+
+                OPENED.put(url, pyramid);
+
+                // 以修改时间记录最近一次打开，清理时据此淘汰
+                try {
+                    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                } catch (IOException ignored) {
+                    // 仅影响淘汰的顺序
+                }
+            }
+        }
+
+        return pyramid;
+    }
+
+    /**
+     * 尚未生成时，在后台生成
+     */
+    public static void prepare(String url) {
+
+        synchronized (MacTilePyramid.class) {
+
+            if (OPENED.containsKey(url) || !BUILDING.add(url)) {
+                return;
+            }
+        }
+
+        BUILDER.execute(() -> {
+
+            try {
+
+                build(url);
+
+            } catch (IOException ignored) {
+
+                // 下次使用时再试
+            } finally {
+
+                synchronized (MacTilePyramid.class) {
+                    BUILDING.remove(url);
+                }
+            }
+        });
+    }
+
+    /**
+     * 在当前线程中生成并打开，已生成时直接返回
+     */
+    static MacTilePyramid build(String url) throws IOException {
+
+        MacTilePyramid pyramid = find(url);
+        if (pyramid != null) {
+            return pyramid;
+        }
+
+        Path file = fileOf(url);
+
+        write(url, file);
+        prune(file, prefixOf(url));
+
+        return find(url);
+    }
+
+    /**
+     * 以资源路径的摘要开头，同一原图的各个版本前缀相同
+     */
+    private static String prefixOf(String url) {
+        return MacDiskCache.hash(url.getBytes(StandardCharsets.UTF_8)) + "-";
+    }
+
+    /**
+     * 资源路径的摘要，加上大小与修改时间的摘要，源文件变化后自然失效
+     */
+    private static Path fileOf(String url) throws IOException {
+
+        URL resource = MacTilePyramid.class.getResource(url);
+        if (resource == null) {
+            throw new IOException("resource not found: " + url);
+        }
+
+        URLConnection connection = resource.openConnection();
+
+        long length;
+        long modified;
+
+        // 部分协议读取大小时会打开输入流，需关闭
+        InputStream in = connection.getInputStream();
+
+        try {
+
+            length = connection.getContentLengthLong();
+            modified = connection.getLastModified();
+
+        } finally {
+
+            in.close();
+        }
+
+        String version = length + "|" + modified + "|" + TILE;
+
+        return MacDiskCache.dir("pyramids").resolve(
+                prefixOf(url) + MacDiskCache.hash(version.getBytes(StandardCharsets.UTF_8)) + SUFFIX);
+    }
+
+    /**
+     * 删除同一原图的旧版本，再按最近打开的时间淘汰，直至总大小不超过上限；正在使用的文件删除失败时跳过
+     */
+    private static void prune(Path keep, String prefix) {
+
+        List<Path> files;
+
+        try (Stream<Path> stream = Files.list(keep.getParent())) {
+
+            files = stream
+                    .filter(it -> it.getFileName().toString().endsWith(SUFFIX))
+                    .collect(Collectors.toList());
+
+        } catch (IOException e) {
+
+            return;
+        }
+
+        long total = 0;
+        List<Path> candidates = new ArrayList<>();
+        Map<Path, Long> modified = new HashMap<>();
+
+        for (Path file : files) {
+
+            if (file.equals(keep)) {
+                total += sizeOf(file);
+                continue;
+            }
+
+            if (file.getFileName().toString().startsWith(prefix)) {
+                delete(file);
+                continue;
+            }
+
+            try {
+
+                modified.put(file, Files.getLastModifiedTime(file).toMillis());
+
+            } catch (IOException e) {
+
+                continue;
+            }
+
+            total += sizeOf(file);
+            candidates.add(file);
+        }
+
+        // 最久未打开的在前
+        candidates.sort(Comparator.comparing(modified::get));
+
+        for (int i = 0; i < candidates.size() && total > DISK_BUDGET; i++) {
+
+            Path file = candidates.get(i);
+            long size = sizeOf(file);
+
+            if (delete(file)) {
+                total -= size;
+            }
+        }
+    }
+
+    private static long sizeOf(Path file) {
+
+        try {
+
+            return Files.size(file);
+
+        } catch (IOException e) {
+
+            return 0;
+        }
+    }
+
+    private static boolean delete(Path file) {
+
+        try {
+
+            return Files.deleteIfExists(file);
+
+        } catch (IOException e) {
+
+            // 可能仍被映射
+            return false;
+        }
+    }
+
+    private static MacTilePyramid open(Path file) throws IOException {
+
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (header.hasRemaining() && channel.read(header) != -1) {
+                // 读满为止
+            }
+            header.flip();
+
+            if (header.remaining() < HEADER || header.getInt() != MAGIC || header.getInt() != TILE) {
+                return null;
+            }
+
+            int width = header.getInt();
+            int height = header.getInt();
+            int levels = header.getInt();
+
+            if (width <= 0 || height <= 0 || levels != MacTileDecoder.getMaxLevel(width, height) + 1) {
+                return null;
+            }
+
+            Layout layout = new Layout(width, height);
+
+            if (channel.size() != layout.size()) {
+                return null;
+            }
+
+            // 映射在通道关闭后依然有效
+            MappedByteBuffer[][] rows = new MappedByteBuffer[levels][];
+
+            for (int level = 0; level < levels; level++) {
+
+                rows[level] = new MappedByteBuffer[layout.rows(level)];
+
+                for (int row = 0; row < rows[level].length; row++) {
+                    rows[level][row] = channel.map(FileChannel.MapMode.READ_ONLY,
+                            layout.offset(level, 0, row), layout.rowSize(level, row));
+                }
+            }
+
+            return new MacTilePyramid(layout, rows);
+        }
+    }
+
+    /**
+     * 写入临时文件再替换，避免读到一半的文件
+     */
+    private static void write(String url, Path file) throws IOException {
+
+        try (InputStream stream = MacTilePyramid.class.getResourceAsStream(url);
+             ImageInputStream in = stream == null ? null : ImageIO.createImageInputStream(stream)) {
+
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("unsupported image: " + url);
+            }
+
+            ImageReader reader = readers.next();
+
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+
+            try {
+
+                reader.setInput(in, false, true);
+
+                Layout layout = new Layout(reader.getWidth(0), reader.getHeight(0));
+
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+                    ByteBuffer header = ByteBuffer.allocate(HEADER);
+                    header.putInt(MAGIC).putInt(TILE).putInt(layout.width).putInt(layout.height).putInt(layout.levels);
+                    header.flip();
+                    writeFully(channel, header, 0);
+
+                    writeBase(reader, channel, layout);
+
+                    for (int level = 1; level < layout.levels; level++) {
+                        writeLevel(channel, layout, level);
+                    }
+                }
+
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            } finally {
+
+                reader.dispose();
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * 第0层：解码后不超过上限时一次读取整张原图；否则按若干行块的条带解码，条带尽量大。
+     * <p>ImageReader按区域读取时，每个条带都会从文件头重新解码到该条带为止，
+     * 共n个条带时解码的总行数约为原图的(n+1)/2倍，因此条带的数量越少越好。</p>
+     */
+    private static void writeBase(ImageReader reader, FileChannel channel, Layout layout) throws IOException {
+
+        int rows = layout.rows(0);
+        int stripRows = (long) layout.width * layout.height * 4 <= STRIP_BUDGET ? rows
+                : (int) Math.max(1, Math.min(rows, STRIP_BUDGET / ((long) layout.width * TILE * 4)));
+
+        int[] pixels = new int[TILE * TILE];
+        ByteBuffer tile = ByteBuffer.allocate(TILE * TILE * 4);
+
+        for (int from = 0; from < rows; from += stripRows) {
+
+            int to = Math.min(rows, from + stripRows);
+
+            int y = from * TILE;
+            int height = Math.min(to * TILE, layout.height) - y;
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            if (stripRows < rows) {
+                param.setSourceRegion(new Rectangle(0, y, layout.width, height));
+            }
+
+            BufferedImage strip = reader.read(0, param);
+
+            for (int row = from; row < to; row++) {
+
+                int tileHeight = layout.tileHeight(0, row);
+
+                for (int col = 0; col < layout.cols(0); col++) {
+
+                    int tileWidth = layout.tileWidth(0, col);
+
+                    strip.getRGB(col * TILE, (row - from) * TILE, tileWidth, tileHeight, pixels, 0, tileWidth);
+
+                    tile.clear();
+                    for (int i = 0, n = tileWidth * tileHeight; i < n; i++) {
+                        putBgraPre(tile, pixels[i]);
+                    }
+                    tile.flip();
+
+                    writeFully(channel, tile, layout.offset(0, col, row));
+                }
+            }
+        }
+    }
+
+    /**
+     * 其余各层：由上一层相邻的2x2个像素取平均
+     */
+    private static void writeLevel(FileChannel channel, Layout layout, int level) throws IOException {
+
+        int parent = level - 1;
+        int parentWidth = layout.levelWidth(parent);
+        int parentHeight = layout.levelHeight(parent);
+
+        // 上一层对应的2x2个块
+        ByteBuffer[] children = new ByteBuffer[4];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = ByteBuffer.allocate(TILE * TILE * 4);
+        }
+
+        ByteBuffer tile = ByteBuffer.allocate(TILE * TILE * 4);
+
+        for (int row = 0; row < layout.rows(level); row++) {
+            for (int col = 0; col < layout.cols(level); col++) {
+
+                for (int i = 0; i < children.length; i++) {
+
+                    int childCol = col * 2 + (i & 1);
+                    int childRow = row * 2 + (i >> 1);
+
+                    children[i].clear();
+
+                    if (childCol < layout.cols(parent) && childRow < layout.rows(parent)) {
+                        children[i].limit(layout.tileWidth(parent, childCol) * layout.tileHeight(parent, childRow) * 4);
+                        readFully(channel, children[i], layout.offset(parent, childCol, childRow));
+                    }
+                }
+
+                int tileWidth = layout.tileWidth(level, col);
+                int tileHeight = layout.tileHeight(level, row);
+
+                tile.clear();
+
+                for (int y = 0; y < tileHeight; y++) {
+                    for (int x = 0; x < tileWidth; x++) {
+
+                        // 上一层的全局坐标，越界时取边缘
+                        int x0 = (col * TILE + x) * 2;
+                        int y0 = (row * TILE + y) * 2;
+                        int x1 = Math.min(x0 + 1, parentWidth - 1);
+                        int y1 = Math.min(y0 + 1, parentHeight - 1);
+
+                        for (int channelIndex = 0; channelIndex < 4; channelIndex++) {
+
+                            int sum = sample(children, layout, parent, col, row, x0, y0, channelIndex)
+                                    + sample(children, layout, parent, col, row, x1, y0, channelIndex)
+                                    + sample(children, layout, parent, col, row, x0, y1, channelIndex)
+                                    + sample(children, layout, parent, col, row, x1, y1, channelIndex);
+
+                            tile.put((byte) ((sum + 2) >> 2));
+                        }
+                    }
+                }
+
+                tile.flip();
+
+                writeFully(channel, tile, layout.offset(level, col, row));
+            }
+        }
+    }
+
+    private static int sample(ByteBuffer[] children, Layout layout, int parent, int col, int row,
+                              int x, int y, int channelIndex) {
+
+        int childCol = x / TILE;
+        int childRow = y / TILE;
+
+        ByteBuffer child = children[(childRow - row * 2) * 2 + (childCol - col * 2)];
+        int childWidth = layout.tileWidth(parent, childCol);
+
+        return child.get(((y - childRow * TILE) * childWidth + (x - childCol * TILE)) * 4 + channelIndex) & 0xFF;
+    }
+
+    private static void putBgraPre(ByteBuffer buffer, int argb) {
+
+        int a = argb >>> 24;
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+
+        if (a != 0xFF) {
+            r = (r * a + 127) / 255;
+            g = (g * a + 127) / 255;
+            b = (b * a + 127) / 255;
+        }
+
+        buffer.put((byte) b).put((byte) g).put((byte) r).put((byte) a);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+
+            int length = channel.read(buffer, position);
+            if (length < 0) {
+                throw new IOException("unexpected end of pyramid");
+            }
+
+            position += length;
+        }
+    }
+    // endregion
+
+    // region {读取}
+
+    public int getWidth() {
+        return layout.width;
+    }
+
+    public int getHeight() {
+        return layout.height;
+    }
+
+    public int getLevels() {
+        return layout.levels;
+    }
+
+    public int getCols(int level) {
+        return layout.cols(level);
+    }
+
+    public int getRows(int level) {
+        return layout.rows(level);
+    }
+
+    /**
+     * 不超过指定采样间隔的最粗层级
+     */
+    public int toLevel(int subsampling) {
+
+        int level = 0;
+        while (level + 1 < layout.levels && (2 << level) <= subsampling) {
+            level++;
+        }
+
+        return level;
+    }
+
+    /**
+     * 读取一块
+     */
+    public Image readTile(int level, int col, int row) {
+
+        int width = layout.tileWidth(level, col);
+        int height = layout.tileHeight(level, row);
+
+        WritableImage image = new WritableImage(width, height);
+        copy(image.getPixelWriter(), level, col, row, 0, 0, width, height, 0, 0);
+
+        return image;
+    }
+
+    /**
+     * 读取原图中的一块区域，按该层级的比例缩小
+     */
+    public Image read(int level, Rectangle region) {
+
+        int step = 1 << level;
+
+        // 换算到该层级的坐标，向外取整
+        int minX = region.x / step;
+        int minY = region.y / step;
+        int maxX = Math.min(layout.levelWidth(level), (region.x + region.width + step - 1) / step);
+        int maxY = Math.min(layout.levelHeight(level), (region.y + region.height + step - 1) / step);
+
+        WritableImage image = new WritableImage(maxX - minX, maxY - minY);
+        PixelWriter writer = image.getPixelWriter();
+
+        for (int row = minY / TILE; row * TILE < maxY; row++) {
+            for (int col = minX / TILE; col * TILE < maxX; col++) {
+
+                // 该块与区域的交集，块内坐标
+                int x0 = Math.max(minX, col * TILE) - col * TILE;
+                int y0 = Math.max(minY, row * TILE) - row * TILE;
+                int x1 = Math.min(maxX, col * TILE + layout.tileWidth(level, col)) - col * TILE;
+                int y1 = Math.min(maxY, row * TILE + layout.tileHeight(level, row)) - row * TILE;
+
+                copy(writer, level, col, row, x0, y0, x1 - x0, y1 - y0,
+                        col * TILE + x0 - minX, row * TILE + y0 - minY);
+            }
+        }
+
+        return image;
+    }
+
+    private void copy(PixelWriter writer, int level, int col, int row,
+                      int x, int y, int width, int height, int toX, int toY) {
+
+        int tileWidth = layout.tileWidth(level, col);
+        int tileHeight = layout.tileHeight(level, row);
+
+        // 共享的映射不可改变位置，使用副本
+        ByteBuffer buffer = rows[level][row].duplicate();
+        buffer.position(col * TILE * tileHeight * 4 + (y * tileWidth + x) * 4);
+
+        writer.setPixels(toX, toY, width, height, PixelFormat.getByteBgraPreInstance(), buffer, tileWidth * 4);
+    }
+    // endregion
+
+    /**
+     * 文件的布局：头部之后依次为各层级；每层按行存放，每行按列存放各块，块内按行存放像素
+     */
+    private final static class Layout {
+
+        private final int width;
+        private final int height;
+        private final int levels;
+
+        // 各层级的起始位置，末尾为文件大小
+        private final long[] bases;
+
+        public Layout(int width, int height) {
+
+            this.width = width;
+            this.height = height;
+
+            levels = MacTileDecoder.getMaxLevel(width, height) + 1;
+
+            bases = new long[levels + 1];
+            bases[0] = HEADER;
+
+            for (int level = 0; level < levels; level++) {
+                bases[level + 1] = bases[level] + (long) levelWidth(level) * levelHeight(level) * 4;
+            }
+        }
+
+        public int levelWidth(int level) {
+            return ((width - 1) >> level) + 1;
+        }
+
+        public int levelHeight(int level) {
+            return ((height - 1) >> level) + 1;
+        }
+
+        public int cols(int level) {
+            return (levelWidth(level) + TILE - 1) / TILE;
+        }
+
+        public int rows(int level) {
+            return (levelHeight(level) + TILE - 1) / TILE;
+        }
+
+        public int tileWidth(int level, int col) {
+            return Math.min(TILE, levelWidth(level) - col * TILE);
+        }
+
+        public int tileHeight(int level, int row) {
+            return Math.min(TILE, levelHeight(level) - row * TILE);
+        }
+
+        public long rowSize(int level, int row) {
+            return (long) levelWidth(level) * tileHeight(level, row) * 4;
+        }
+
+        public long offset(int level, int col, int row) {
+            return bases[level] + (long) row * TILE * levelWidth(level) * 4 + (long) col * TILE * tileHeight(level, row) * 4;
+        }
+
+        public long size() {
+            return bases[levels];
+        }
+    }
+}
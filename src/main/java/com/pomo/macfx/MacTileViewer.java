@@ -0,0 +1,642 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.WeakInvalidationListener;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.layout.Region;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h2>分块图片查看器</h2>
+ * <p>滚轮缩放、拖动平移、双击在适应窗口与原始尺寸间切换；只解码可见区域中、与当前缩放相称的层级的块。</p>
+ * <p>块未就绪时，先以较粗层级的块或缩略图代替。已解码的块由所有查看器共享，总内存超出上限时淘汰最久未用的。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacTileViewer extends Region {
+
+    private final static double PREF_WIDTH = 480;
+    private final static double PREF_HEIGHT = 300;
+
+    // 最大放大倍数，屏幕的物理像素相对原图像素
+    private final static double MAX_ZOOM = 8;
+
+    // 滚轮每滚动一个单位的缩放比例
+    private final static double ZOOM_BASE = 1.005;
+
+    private final static long BUDGET = 48L * 1024 * 1024;
+
+    // 已解码的块，以原图、层级、行列组成的long为键，仅可在FX线程中使用
+    private final static MacLongMap<Tile> CACHE = new MacLongMap<>();
+
+    // 访问顺序的链表，最久未用的在前
+    private static Tile eldest;
+    private static Tile newest;
+
+    private static long cacheSize;
+
+    // 各原图的编号，组成块的键
+    private final static Map<String, Integer> URL_IDS = new HashMap<>();
+
+    // 所有解码器都只在此线程中使用
+    private final static ExecutorService LOADER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mac-fx-tile-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final MacBackground macBackground;
+
+    private final String url;
+
+    // 本图的块的键的高位
+    private final long urlKey;
+
+    private final ObservableValue<Image> thumbnail;
+
+    private final MacTileDecoder decoder;
+
+    private final Canvas canvas;
+
+    private final InvalidationListener thumbnailListener;
+
+    // 已提交、尚未完成的请求，以层级、行与列的范围组成的long为键
+    private final MacLongMap<Boolean> pending;
+
+    // 可见的块变化时递增，过时的请求在解码前丢弃
+    private final AtomicInteger generation;
+
+    // 上一次可见的层级与块的范围，层级为-1时表示无
+    private int lastLevel = -1;
+    private int lastFromCol;
+    private int lastToCol;
+    private int lastFromRow;
+    private int lastToRow;
+
+    // 原图尺寸，读取完成前为0
+    private int imageWidth;
+    private int imageHeight;
+
+    private int maxLevel;
+
+    // 每个原图像素对应的逻辑像素
+    private double scale = 1;
+
+    // 视口左上角在原图中的位置
+    private double originX;
+    private double originY;
+
+    // 适应窗口时，尺寸变化后重新适应
+    private boolean fitted = true;
+
+    // 拖动开始时，鼠标与视口的位置
+    private double pressX;
+    private double pressY;
+    private double pressOriginX;
+    private double pressOriginY;
+
+    public MacTileViewer(MacBackground macBackground, ObservableValue<Image> thumbnail, String url) {
+
+        this.macBackground = macBackground;
+        this.url = url;
+        this.thumbnail = thumbnail;
+
+        Integer id = URL_IDS.get(url);
+        if (id == null) {
+            id = URL_IDS.size();
+            URL_IDS.put(url, id);
+        }
+        urlKey = (long) id << 44;
+
+        decoder = new MacTileDecoder(url);
+
+        pending = new MacLongMap<>();
+        generation = new AtomicInteger();
+
+        canvas = new Canvas();
+        getChildren().add(canvas);
+        getStyleClass().add("tile-viewer");
+
+        // 缩略图随子项存在，弱引用避免窗口关闭后仍被持有
+        thumbnailListener = it -> redraw();
+        thumbnail.addListener(new WeakInvalidationListener(thumbnailListener));
+
+        // 移出场景时释放解码器，块仍留在缓存中
+        sceneProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue == null) {
+
+                generation.incrementAndGet();
+                pending.clear();
+                lastLevel = -1;
+
+                LOADER.execute(decoder::close);
+            }
+        });
+
+        setOnScroll(e -> {
+            zoom(Math.pow(ZOOM_BASE, e.getDeltaY()), e.getX(), e.getY());
+            e.consume();
+        });
+
+        setOnZoom(e -> {
+            zoom(e.getZoomFactor(), e.getX(), e.getY());
+            e.consume();
+        });
+
+        setOnMousePressed(e -> {
+            pressX = e.getX();
+            pressY = e.getY();
+            pressOriginX = originX;
+            pressOriginY = originY;
+        });
+
+        setOnMouseDragged(e -> {
+
+            if (imageWidth == 0) {
+                return;
+            }
+
+            originX = pressOriginX - (e.getX() - pressX) / scale;
+            originY = pressOriginY - (e.getY() - pressY) / scale;
+
+            clamp();
+            redraw();
+        });
+
+        setOnMouseClicked(e -> {
+
+            if (e.getClickCount() != 2 || imageWidth == 0) {
+                return;
+            }
+
+            if (fitted) {
+                zoom(1 / (scale * MacOSApp.getRenderScale()), e.getX(), e.getY());
+            } else {
+                fit();
+                redraw();
+            }
+        });
+
+        open();
+    }
+
+    private void open() {
+
+        LOADER.execute(() -> {
+
+            try {
+
+                decoder.open();
+
+            } catch (IOException e) {
+
+                // 无法分块解码，只显示缩略图
+                return;
+            }
+
+            int width = decoder.getWidth();
+            int height = decoder.getHeight();
+
+            Platform.runLater(() -> {
+
+                imageWidth = width;
+                imageHeight = height;
+                maxLevel = MacTileDecoder.getMaxLevel(width, height);
+
+                fit();
+                redraw();
+            });
+        });
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        return PREF_WIDTH;
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+        return PREF_HEIGHT;
+    }
+
+    @Override
+    protected void layoutChildren() {
+
+        double width = getWidth();
+        double height = getHeight();
+
+        if (canvas.getWidth() == width && canvas.getHeight() == height) {
+            return;
+        }
+
+        canvas.setWidth(width);
+        canvas.setHeight(height);
+
+        if (fitted) {
+            fit();
+        } else {
+            scale = Math.max(scale, getMinScale());
+            clamp();
+        }
+
+        redraw();
+    }
+
+    // region {视口}
+
+    private double getMinScale() {
+
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+
+        if (imageWidth == 0 || width == 0 || height == 0) {
+            return 1;
+        }
+
+        return Math.min(width / imageWidth, height / imageHeight);
+    }
+
+    private void fit() {
+
+        fitted = true;
+        scale = getMinScale();
+
+        clamp();
+    }
+
+    /**
+     * 以视口中的(x, y)为中心缩放
+     */
+    private void zoom(double factor, double x, double y) {
+
+        if (imageWidth == 0) {
+            return;
+        }
+
+        double minScale = getMinScale();
+        double maxScale = Math.max(minScale, MAX_ZOOM / MacOSApp.getRenderScale());
+
+        double target = Math.max(minScale, Math.min(maxScale, scale * factor));
+
+        if (target == scale) {
+            return;
+        }
+
+        double sourceX = originX + x / scale;
+        double sourceY = originY + y / scale;
+
+        scale = target;
+        fitted = target <= minScale;
+
+        originX = sourceX - x / scale;
+        originY = sourceY - y / scale;
+
+        clamp();
+        redraw();
+    }
+
+    /**
+     * 原图小于视口时居中，否则不得移出原图
+     */
+    private void clamp() {
+
+        double width = canvas.getWidth() / scale;
+        double height = canvas.getHeight() / scale;
+
+        originX = width >= imageWidth ? (imageWidth - width) / 2 : Math.max(0, Math.min(imageWidth - width, originX));
+        originY = height >= imageHeight ? (imageHeight - height) / 2 : Math.max(0, Math.min(imageHeight - height, originY));
+    }
+
+    /**
+     * 采样间隔不超过每个物理像素对应的原图像素的最粗层级
+     */
+    private int toLevel() {
+
+        double step = 1 / (scale * MacOSApp.getRenderScale());
+
+        int level = 0;
+        while (level < maxLevel && (2 << level) <= step) {
+            level++;
+        }
+
+        return level;
+    }
+    // endregion
+
+    // region {绘制}
+
+    private void redraw() {
+
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, width, height);
+
+        if (width == 0 || height == 0) {
+            return;
+        }
+
+        Image image = thumbnail.getValue();
+
+        if (imageWidth == 0) {
+
+            // 尺寸未知，按缩略图的比例居中
+            if (image != null && image.getWidth() > 0 && image.getHeight() > 0) {
+
+                double fit = Math.min(width / image.getWidth(), height / image.getHeight());
+                double imageViewWidth = image.getWidth() * fit;
+                double imageViewHeight = image.getHeight() * fit;
+
+                gc.drawImage(image, (width - imageViewWidth) / 2, (height - imageViewHeight) / 2,
+                        imageViewWidth, imageViewHeight);
+            }
+
+        } else {
+
+            // 最底层为缩略图，避免出现空白
+            if (image != null) {
+                gc.drawImage(image, -originX * scale, -originY * scale, imageWidth * scale, imageHeight * scale);
+            }
+
+            drawTiles(gc, width, height);
+        }
+
+        Node background = macBackground.asNode();
+        if (getScene() != null && background.getScene() == getScene()) {
+            macBackground.repaint(background.sceneToLocal(localToScene(getBoundsInLocal())));
+        }
+    }
+
+    private void drawTiles(GraphicsContext gc, double width, double height) {
+
+        int level = toLevel();
+        int span = MacTileDecoder.TILE << level;
+
+        int fromCol = (int) (Math.max(0, originX) / span);
+        int toCol = (int) Math.ceil(Math.min(imageWidth, originX + width / scale) / span);
+        int fromRow = (int) (Math.max(0, originY) / span);
+        int toRow = (int) Math.ceil(Math.min(imageHeight, originY + height / scale) / span);
+
+        if (level != lastLevel || fromCol != lastFromCol || toCol != lastToCol
+                || fromRow != lastFromRow || toRow != lastToRow) {
+
+            lastLevel = level;
+            lastFromCol = fromCol;
+            lastToCol = toCol;
+            lastFromRow = fromRow;
+            lastToRow = toRow;
+
+            generation.incrementAndGet();
+            pending.clear();
+        }
+
+        for (int row = fromRow; row < toRow; row++) {
+
+            // 同一行中缺失的块，一次请求
+            int missingFrom = -1;
+            int missingTo = -1;
+
+            for (int col = fromCol; col < toCol; col++) {
+
+                if (!drawTile(gc, level, col, row)) {
+
+                    if (missingFrom < 0) {
+                        missingFrom = col;
+                    }
+                    missingTo = col + 1;
+                }
+            }
+
+            if (missingFrom >= 0) {
+                request(level, row, missingFrom, missingTo);
+            }
+        }
+    }
+
+    /**
+     * 绘制该块，缺失时以较粗层级的块代替，返回该层级的块是否已就绪
+     */
+    private boolean drawTile(GraphicsContext gc, int level, int col, int row) {
+
+        int span = MacTileDecoder.TILE << level;
+
+        double sourceX = col * span;
+        double sourceY = row * span;
+        double sourceWidth = Math.min(span, imageWidth - sourceX);
+        double sourceHeight = Math.min(span, imageHeight - sourceY);
+
+        // 对齐到整像素，避免块之间出现缝隙
+        double x0 = Math.floor((sourceX - originX) * scale);
+        double y0 = Math.floor((sourceY - originY) * scale);
+        double x1 = Math.ceil((sourceX + sourceWidth - originX) * scale);
+        double y1 = Math.ceil((sourceY + sourceHeight - originY) * scale);
+
+        for (int l = level; l <= maxLevel; l++) {
+
+            int shift = l - level;
+
+            Image tile = get(key(l, col >> shift, row >> shift));
+
+            if (tile == null) {
+                continue;
+            }
+
+            // 该块在较粗层级的块中所占的区域
+            int step = 1 << l;
+            double offsetX = (sourceX - (col >> shift) * (MacTileDecoder.TILE << l)) / step;
+            double offsetY = (sourceY - (row >> shift) * (MacTileDecoder.TILE << l)) / step;
+
+            gc.drawImage(tile,
+                    offsetX, offsetY,
+                    Math.min(tile.getWidth() - offsetX, sourceWidth / step),
+                    Math.min(tile.getHeight() - offsetY, sourceHeight / step),
+                    x0, y0, x1 - x0, y1 - y0);
+
+            return shift == 0;
+        }
+
+        return false;
+    }
+    // endregion
+
+    // region {加载}
+
+    private void request(int level, int row, int fromCol, int toCol) {
+
+        long request = (long) level << 60 | (long) row << 40 | (long) fromCol << 20 | toCol;
+
+        if (pending.get(request) != null) {
+            return;
+        }
+        pending.put(request, Boolean.TRUE);
+
+        int generation = this.generation.get();
+
+        LOADER.execute(() -> {
+
+            // 解码前视图已变化
+            if (generation != this.generation.get()) {
+                return;
+            }
+
+            Image[] tiles;
+
+            try {
+
+                tiles = decoder.decodeRow(level, row, fromCol, toCol);
+
+            } catch (IOException e) {
+
+                // 不再重试，保留较粗的块或缩略图
+                return;
+            }
+
+            Platform.runLater(() -> {
+
+                for (int i = 0; i < tiles.length; i++) {
+                    if (tiles[i] != null) {
+                        put(key(level, fromCol + i, row), tiles[i]);
+                    }
+                }
+
+                pending.remove(request);
+
+                redraw();
+            });
+        });
+    }
+
+    /**
+     * 原图编号占高20位，层级4位，列、行各20位
+     */
+    private long key(int level, int col, int row) {
+        return urlKey | (long) level << 40 | (long) col << 20 | row;
+    }
+
+    /**
+     * 取出并标记为最近使用
+     */
+    private static Image get(long key) {
+
+        Tile tile = CACHE.get(key);
+
+        if (tile == null) {
+            return null;
+        }
+
+        unlink(tile);
+        link(tile);
+
+        return tile.image;
+    }
+
+    private static void put(long key, Image image) {
+
+        Tile tile = CACHE.get(key);
+
+        if (tile != null) {
+
+            cacheSize -= sizeOf(tile.image);
+            unlink(tile);
+
+        } else {
+
+            tile = new Tile(key);
+            CACHE.put(key, tile);
+        }
+
+        tile.image = image;
+        cacheSize += sizeOf(image);
+        link(tile);
+
+        // 至少保留刚放入的这一块
+        while (cacheSize > BUDGET && eldest != tile) {
+
+            Tile evicted = eldest;
+
+            unlink(evicted);
+            CACHE.remove(evicted.key);
+            cacheSize -= sizeOf(evicted.image);
+        }
+    }
+
+    private static void link(Tile tile) {
+
+        tile.previous = newest;
+        tile.next = null;
+
+        if (newest != null) {
+            newest.next = tile;
+        } else {
+            eldest = tile;
+        }
+
+        newest = tile;
+    }
+
+    private static void unlink(Tile tile) {
+
+        if (tile.previous != null) {
+            tile.previous.next = tile.next;
+        } else {
+            eldest = tile.next;
+        }
+
+        if (tile.next != null) {
+            tile.next.previous = tile.previous;
+        } else {
+            newest = tile.previous;
+        }
+
+        tile.previous = null;
+        tile.next = null;
+    }
+
+    private static long sizeOf(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4;
+    }
+    // endregion
+
+    private final static class Tile {
+
+        private final long key;
+
+        private Image image;
+
+        private Tile previous;
+        private Tile next;
+
+        private Tile(long key) {
+            this.key = key;
+        }
+    }
+}
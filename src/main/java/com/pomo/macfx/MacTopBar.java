@@ -17,7 +17,6 @@
  */
 package com.pomo.macfx;
 
-import javafx.animation.AnimationTimer;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.layout.BorderPane;
@@ -27,7 +26,6 @@ import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
 
 import java.time.Instant;
-import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
@@ -61,19 +59,15 @@ public final class MacTopBar {
         Label time = new Label();
         time.getStyleClass().add("time");
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss");
-        AnimationTimer timer = new AnimationTimer() {
+        MacTicker.subscribe(now -> {
 
-            @Override
-            public void handle(long now) {
+            String text = Instant.ofEpochMilli(now).atZone(ZoneId.systemDefault()).format(formatter);
 
-                Instant instant = Instant.ofEpochMilli(System.currentTimeMillis());
-                LocalDateTime localDateTime = LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
-                String format = localDateTime.format(formatter);
-
-                time.setText(format);
+            // 文本未变时不触发重新布局
+            if (!text.equals(time.getText())) {
+                time.setText(text);
             }
-        };
-        timer.start();
+        });
         // endregion
 
         // region {battery}
@@ -0,0 +1,228 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.value.WritableDoubleValue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+/**
+ * <h2>补间动画</h2>
+ * <p>所有补间由同一个AnimationTimer推进，没有补间时停止；补间记录在结束后回收复用，播放动画不产生垃圾。</p>
+ * <p>缓动曲线与JavaFX内置的插值器一致。</p>
+ * <p>仅可在FX线程中使用。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacTween {
+
+    public final static int LINEAR = 0;
+    public final static int EASE_IN = 1;
+    public final static int EASE_OUT = 2;
+    public final static int EASE_BOTH = 3;
+
+    private final static List<Tween> ACTIVE = new ArrayList<>();
+    private final static ArrayDeque<Tween> POOL = new ArrayDeque<>();
+
+    private final static AnimationTimer TIMER = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            advance(now);
+        }
+    };
+
+    private static boolean running;
+
+    private MacTween() {
+    }
+
+    /**
+     * 由当前值过渡到目标值；该属性已有补间时，从当前值重新开始
+     */
+    public static void to(WritableDoubleValue target, double value, double seconds, int easing) {
+        to(target, value, seconds, easing, null);
+    }
+
+    public static void to(WritableDoubleValue target, double value, double seconds, int easing, Runnable onFinished) {
+
+        Tween tween = obtain(target);
+        tween.target = target;
+        tween.from = target.get();
+        tween.to = value;
+
+        start(tween, seconds, easing, onFinished);
+    }
+
+    /**
+     * 每帧以缓动后的进度（0至1）回调；同一回调已在运行时，从头重新开始
+     */
+    public static void run(double seconds, int easing, DoubleConsumer update, Runnable onFinished) {
+
+        Tween tween = obtain(update);
+        tween.update = update;
+
+        start(tween, seconds, easing, onFinished);
+    }
+
+    /**
+     * 当前正在运行的补间数量
+     */
+    public static int getActiveCount() {
+        return ACTIVE.size();
+    }
+
+    private static Tween obtain(Object key) {
+
+        for (int i = 0, size = ACTIVE.size(); i < size; i++) {
+
+            Tween tween = ACTIVE.get(i);
+
+            if (tween.target == key || tween.update == key) {
+                return tween;
+            }
+        }
+
+        Tween tween = POOL.poll();
+        if (tween == null) {
+            tween = new Tween();
+        }
+
+        ACTIVE.add(tween);
+
+        return tween;
+    }
+
+    private static void start(Tween tween, double seconds, int easing, Runnable onFinished) {
+
+        // 开始时刻取自第一帧，与同一帧内启动的其他补间对齐
+        tween.start = -1;
+        tween.duration = Math.max(1, (long) (seconds * 1_000_000_000L));
+        tween.easing = easing;
+        tween.onFinished = onFinished;
+
+        if (!running) {
+            running = true;
+            TIMER.start();
+        }
+    }
+
+    private static void advance(long now) {
+
+        MacQuality.active();
+
+        // 倒序遍历，回调中新增的补间追加在末尾，下一帧才推进
+        for (int i = ACTIVE.size() - 1; i >= 0; i--) {
+
+            Tween tween = ACTIVE.get(i);
+
+            if (tween.start < 0) {
+                tween.start = now;
+            }
+
+            double fraction = Math.min(1, (double) (now - tween.start) / tween.duration);
+
+            tween.apply(ease(tween.easing, fraction));
+
+            if (fraction < 1) {
+                continue;
+            }
+
+            Runnable onFinished = tween.onFinished;
+
+            remove(i);
+
+            if (onFinished != null) {
+                onFinished.run();
+            }
+        }
+
+        if (ACTIVE.isEmpty()) {
+            running = false;
+            TIMER.stop();
+        }
+    }
+
+    private static void remove(int index) {
+
+        int last = ACTIVE.size() - 1;
+
+        Tween tween = ACTIVE.get(index);
+        ACTIVE.set(index, ACTIVE.get(last));
+        ACTIVE.remove(last);
+
+        tween.clear();
+        POOL.push(tween);
+    }
+
+    /**
+     * 与Interpolator.EASE_IN、EASE_OUT、EASE_BOTH的公式相同：前后20%为二次加速、减速，中间匀速
+     */
+    private static double ease(int easing, double t) {
+
+        if (t <= 0 || t >= 1) {
+            return t;
+        }
+
+        switch (easing) {
+            case EASE_IN:
+                return t < 0.2 ? 25.0 / 9 * t * t : 10.0 / 9 * t - 1.0 / 9;
+            case EASE_OUT:
+                return t > 0.8 ? -25.0 / 9 * t * t + 50.0 / 9 * t - 16.0 / 9 : 10.0 / 9 * t;
+            case EASE_BOTH:
+                return t < 0.2 ? 3.125 * t * t : t > 0.8 ? -3.125 * t * t + 6.25 * t - 2.125 : 1.25 * t - 0.125;
+            default:
+                return t;
+        }
+    }
+
+    private final static class Tween {
+
+        private WritableDoubleValue target;
+        private double from;
+        private double to;
+
+        private DoubleConsumer update;
+
+        private long start;
+        private long duration;
+        private int easing;
+
+        private Runnable onFinished;
+
+        private void apply(double fraction) {
+
+            if (target != null) {
+                target.set(from + (to - from) * fraction);
+            }
+
+            if (update != null) {
+                update.accept(fraction);
+            }
+        }
+
+        private void clear() {
+            target = null;
+            update = null;
+            onFinished = null;
+        }
+    }
+}
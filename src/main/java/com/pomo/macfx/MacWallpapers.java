@@ -0,0 +1,350 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * <h2>壁纸管理</h2>
+ * <p>已解码的壁纸按最近使用保留，总内存超出上限时淘汰最久未用的；切换壁纸后，在后台预先解码相邻的壁纸。</p>
+ * <p>壁纸按显示区域的尺寸解码：缩小一半及以上时由JavaFX直接缩小解码，裁去不可见的区域；显示区域的尺寸按档位划分，跨档时才需重新解码。</p>
+ * <p>已生成分块金字塔的壁纸，直接从相应层级复制可见区域的像素，无需解码。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacWallpapers {
+
+    private final static long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    // 档位的粒度，物理像素
+    private final static int BUCKET = 256;
+
+    private final List<String> urls;
+
+    private final long budget;
+
+    // 访问顺序，最久未用的在前
+    private final LinkedHashMap<String, Image> cache;
+
+    // 正在解码的
+    private final Map<String, CompletableFuture<Image>> pending;
+
+    private final ExecutorService executor;
+
+    private long size;
+
+    // 当前档位的上限，物理像素
+    private int bucketWidth = BUCKET;
+    private int bucketHeight = BUCKET;
+
+    public MacWallpapers(List<String> urls) {
+        this(urls, DEFAULT_BUDGET);
+    }
+
+    public MacWallpapers(List<String> urls, long budget) {
+
+        this.urls = new ArrayList<>(urls);
+        this.budget = budget;
+
+        cache = new LinkedHashMap<>(16, 0.75f, true);
+        pending = new HashMap<>();
+
+        // 单线程即可，避免预取与用户的请求争抢CPU
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mac-fx-wallpaper-loader");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * 设置显示区域的逻辑尺寸，档位变化时返回true
+     */
+    public synchronized boolean setViewport(double width, double height) {
+
+        double scale = MacOSApp.getRenderScale();
+
+        int bucketWidth = toBucket(width * scale);
+        int bucketHeight = toBucket(height * scale);
+
+        if (bucketWidth == this.bucketWidth && bucketHeight == this.bucketHeight) {
+            return false;
+        }
+
+        this.bucketWidth = bucketWidth;
+        this.bucketHeight = bucketHeight;
+
+        return true;
+    }
+
+    /**
+     * 已缓存时立即回调；否则在后台解码，完成后于FX线程回调
+     */
+    public void get(String url, Consumer<Image> callback) {
+
+        CompletableFuture<Image> future = request(url);
+
+        if (future.isDone()) {
+
+            Image image = future.join();
+            if (image != null) {
+                callback.accept(image);
+            }
+
+        } else {
+
+            future.thenAccept(image -> {
+                if (image != null) {
+                    Platform.runLater(() -> callback.accept(image));
+                }
+            });
+        }
+    }
+
+    /**
+     * 阻塞直至解码完成，仅用于启动时的首张壁纸
+     */
+    public Image getNow(String url) {
+        return request(url).join();
+    }
+
+    /**
+     * 在后台解码，不回调
+     */
+    public void prefetch(String url) {
+        request(url);
+    }
+
+    /**
+     * 预取列表中与之相邻的壁纸
+     */
+    public void prefetchNeighbours(String url) {
+
+        int index = urls.indexOf(url);
+
+        if (index < 0 || urls.size() < 2) {
+            return;
+        }
+
+        prefetch(urls.get((index + 1) % urls.size()));
+        prefetch(urls.get((index - 1 + urls.size()) % urls.size()));
+    }
+
+    private synchronized CompletableFuture<Image> request(String url) {
+
+        int width = bucketWidth;
+        int height = bucketHeight;
+
+        String key = url + "@" + width + "x" + height;
+
+        Image image = cache.get(key);
+        if (image != null) {
+            return CompletableFuture.completedFuture(image);
+        }
+
+        CompletableFuture<Image> future = pending.get(key);
+        if (future != null) {
+            return future;
+        }
+
+        future = CompletableFuture.supplyAsync(() -> decode(url, width, height), executor);
+        pending.put(key, future);
+
+        future.thenAccept(it -> put(key, it));
+
+        return future;
+    }
+
+    private synchronized void put(String key, Image image) {
+
+        pending.remove(key);
+
+        if (image == null) {
+            return;
+        }
+
+        Image previous = cache.put(key, image);
+        if (previous != null) {
+            size -= sizeOf(previous);
+        }
+        size += sizeOf(image);
+
+        // 至少保留刚放入的这一张
+        Iterator<Image> iterator = cache.values().iterator();
+        while (size > budget && cache.size() > 1) {
+            size -= sizeOf(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 解码为恰好能覆盖该档位内任意尺寸的图片，优先读取分块金字塔
+     */
+    static Image decode(String url, int bucketWidth, int bucketHeight) {
+
+        MacTilePyramid pyramid = MacTilePyramid.find(url);
+
+        if (pyramid == null) {
+
+            // 本次直接解码，下次即可使用
+            MacTilePyramid.prepare(url);
+
+            return decodeImage(url, bucketWidth, bucketHeight);
+        }
+
+        Rectangle region = toRegion(pyramid.getWidth(), pyramid.getHeight(), bucketWidth, bucketHeight);
+
+        return pyramid.read(pyramid.toLevel(toSubsampling(region, bucketWidth, bucketHeight)), region);
+    }
+
+    /**
+     * 从原图解码：由JavaFX直接缩小解码至铺满档位上限的尺寸，再裁去不可见的部分
+     */
+    static Image decodeImage(String url, int bucketWidth, int bucketHeight) {
+
+        Dimension size = readSize(url);
+
+        if (size == null) {
+            return decodeFully(url);
+        }
+
+        Rectangle region = toRegion(size.width, size.height, bucketWidth, bucketHeight);
+
+        // 缩小不足一半时，JavaFX只能先全尺寸解码再缩放，缩放比解码本身更慢，不如直接使用原尺寸
+        double scale = toSubsampling(region, bucketWidth, bucketHeight) == 1 ? 1
+                : Math.max((double) bucketWidth / region.width, (double) bucketHeight / region.height);
+
+        // 缩小一半及以上时，解码器可直接按1/2、1/4、1/8解码，余下的缩放取最近的像素即可
+        Image image = scale == 1 ? new Image(url)
+                : new Image(url, Math.ceil(size.width * scale), Math.ceil(size.height * scale), false, false);
+
+        if (image.isError()) {
+            return null;
+        }
+
+        int x = (int) Math.floor(region.x * scale);
+        int y = (int) Math.floor(region.y * scale);
+        int width = Math.min((int) image.getWidth() - x, (int) Math.ceil(region.width * scale));
+        int height = Math.min((int) image.getHeight() - y, (int) Math.ceil(region.height * scale));
+
+        // 不可见的部分不足四分之一时，不值得再复制一次
+        if ((long) width * height * 4 >= (long) image.getWidth() * (long) image.getHeight() * 3) {
+            return image;
+        }
+
+        return new WritableImage(image.getPixelReader(), x, y, width, height);
+    }
+
+    /**
+     * 只解析文件头，读取原图尺寸，无法读取时返回null
+     */
+    private static Dimension readSize(String url) {
+
+        try (InputStream stream = MacWallpapers.class.getResourceAsStream(url);
+             ImageInputStream in = stream == null ? null : new MemoryCacheImageInputStream(stream)) {
+
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+
+            try {
+
+                reader.setInput(in, true, true);
+
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+
+            } finally {
+
+                reader.dispose();
+            }
+
+        } catch (IOException e) {
+
+            return null;
+        }
+    }
+
+    /**
+     * 居中铺满该档位内任意尺寸时，可能被看到的源区域
+     */
+    private static Rectangle toRegion(int width, int height, int bucketWidth, int bucketHeight) {
+
+        // 档位内，显示区域宽高比的范围
+        int minWidth = Math.max(1, bucketWidth - BUCKET);
+        int minHeight = Math.max(1, bucketHeight - BUCKET);
+        double minAspect = (double) minWidth / bucketHeight;
+        double maxAspect = (double) bucketWidth / minHeight;
+
+        double aspect = (double) width / height;
+        int regionWidth = aspect > maxAspect ? (int) Math.ceil(height * maxAspect) : width;
+        int regionHeight = aspect < minAspect ? (int) Math.ceil(width / minAspect) : height;
+
+        return new Rectangle((width - regionWidth) / 2, (height - regionHeight) / 2, regionWidth, regionHeight);
+    }
+
+    /**
+     * 铺满档位上限所需的缩放，采样间隔取不超过其倒数的整数
+     */
+    private static int toSubsampling(Rectangle region, int bucketWidth, int bucketHeight) {
+
+        double scale = Math.max((double) bucketWidth / region.width, (double) bucketHeight / region.height);
+
+        return Math.max(1, (int) Math.floor(1 / scale));
+    }
+
+    private static Image decodeFully(String url) {
+
+        Image image = new Image(url);
+
+        return image.isError() ? null : image;
+    }
+
+    private static int toBucket(double size) {
+        return Math.max(1, (int) Math.ceil(size / BUCKET)) * BUCKET;
+    }
+
+    private static long sizeOf(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4;
+    }
+}
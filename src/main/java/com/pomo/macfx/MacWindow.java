@@ -17,35 +17,35 @@
  */
 package com.pomo.macfx;
 
-import javafx.animation.Interpolator;
-import javafx.animation.KeyFrame;
-import javafx.animation.KeyValue;
-import javafx.animation.Timeline;
+import javafx.beans.binding.Bindings;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ReadOnlyObjectProperty;
 import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.collections.ObservableList;
 import javafx.geometry.Bounds;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
+import javafx.scene.SnapshotParameters;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.effect.BlurType;
 import javafx.scene.effect.DropShadow;
-import javafx.scene.effect.PerspectiveTransform;
+import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
-import javafx.scene.media.AudioClip;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.CycleMethod;
 import javafx.scene.paint.RadialGradient;
 import javafx.scene.paint.Stop;
 import javafx.scene.shape.Circle;
-import javafx.util.Duration;
+import javafx.scene.transform.Transform;
+
+import java.util.function.DoubleConsumer;
 
 /**
  * <h2>mac窗口</h2>
@@ -54,16 +54,29 @@ import javafx.util.Duration;
  */
 public class MacWindow {
 
-    private final static AudioClip AUDIO_CLOSE = new AudioClip(MacDockItem.class.getResource("/com/pomo/macfx/sound/close.wav").toExternalForm());
-    private final static AudioClip AUDIO_MINIMIZE = new AudioClip(MacDockItem.class.getResource("/com/pomo/macfx/sound/minimize.wav").toExternalForm());
-
     private final VBox root;
     private final ReadOnlyObjectWrapper<State> state;
 
-    private double offsetX;
-    private double offsetY;
+    // 拖动开始时，鼠标在场景中的位置
+    private double pressX;
+    private double pressY;
+
+    // 拖动开始时，截图的位置
+    private double dragX;
+    private double dragY;
+
+    private ImageView dragProxy;
+
+    private final Minimizer minimizer;
 
-    private Minimizer minimizer;
+    // 关闭动画的回调只创建一次，状态在关闭时填入
+    private final DoubleConsumer closeUpdate;
+    private final Runnable closeFinish;
+
+    private ImageView closeProxy;
+    private Circle closeClip;
+    private Bounds closeDirty;
+    private double closeRadius;
 
     public MacWindow(MacBackground macBackground, String name, Node source, Node content) {
 
@@ -95,42 +108,102 @@ public class MacWindow {
         root.setAlignment(Pos.CENTER);
         root.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
 
-        root.addEventFilter(MouseEvent.MOUSE_PRESSED, event -> root.toFront());
+        MacWindowManager windowManager = macBackground.getWindowManager();
+        root.addEventFilter(MouseEvent.MOUSE_PRESSED, event -> windowManager.toFront(root));
 
         DropShadow dropShadow = new DropShadow(
                 BlurType.THREE_PASS_BOX,
                 Color.rgb(0, 0, 0, 0.5),
                 50, 0, 0, 0
         );
+        dropShadow.radiusProperty().bind(Bindings.createDoubleBinding(
+                () -> MacQuality.getTier().getShadowRadius(),
+                MacQuality.tierProperty()
+        ));
         root.setEffect(dropShadow);
 
+        // 窗口大多时间静止，连同阴影缓存为位图：上方有拖动、动画经过时只需贴图，不必每帧重新模糊阴影
+        root.setCache(true);
+
+        // region {拖动}
+        // 拖动期间只移动窗口的截图，松开后再放回真实的窗口
         titleBar.setOnMousePressed(e -> {
-            offsetX = e.getX();
-            offsetY = e.getY();
+            pressX = e.getSceneX();
+            pressY = e.getSceneY();
         });
 
         titleBar.setOnMouseDragged(e -> {
+
+            if (dragProxy == null) {
+
+                dragProxy = createSnapshot();
+                dragX = dragProxy.getLayoutX();
+                dragY = dragProxy.getLayoutY();
+
+                ObservableList<Node> windows = macBackground.getWindows().getChildren();
+                windows.add(windows.indexOf(root) + 1, dragProxy);
+                windowManager.setSuppressed(root, true);
+            }
+
+            Bounds from = dragProxy.getBoundsInParent();
+
+            dragProxy.setLayoutX(dragX + e.getSceneX() - pressX);
+            dragProxy.setLayoutY(dragY + e.getSceneY() - pressY);
+
+            macBackground.repaint(from, dragProxy.getBoundsInParent());
+        });
+
+        titleBar.setOnMouseReleased(e -> {
+
+            if (dragProxy == null) {
+                return;
+            }
+
             root.relocate(
-                    root.getLayoutX() + e.getX() - offsetX,
-                    root.getLayoutY() + e.getY() - offsetY
+                    root.getLayoutX() + dragProxy.getLayoutX() - dragX,
+                    root.getLayoutY() + dragProxy.getLayoutY() - dragY
             );
-            macBackground.repaint();
+            windowManager.setSuppressed(root, false);
+
+            macBackground.getWindows().getChildren().remove(dragProxy);
+            dragProxy = null;
         });
+        // endregion
 
         // region {关闭}
+        closeUpdate = fraction -> {
+            closeClip.setRadius(closeRadius + (1 - closeRadius) * fraction);
+            macBackground.repaint(closeDirty);
+        };
+
+        closeFinish = () -> {
+            macBackground.getWindows().getChildren().remove(closeProxy);
+            closeProxy = null;
+            state.set(State.DESTROY);
+        };
+
         close.setOnAction(e -> {
 
             if (state.get() != State.SHOW) {
                 return;
             }
 
-            AUDIO_CLOSE.play();
+            MacSound.CLOSE.play();
 
             Bounds windowBounds = root.getBoundsInLocal();
-
             Bounds buttonBounds = root.sceneToLocal(close.localToScene(close.getBoundsInLocal()));
-            double x = buttonBounds.getMinX() + buttonBounds.getWidth() / 2;
-            double y = buttonBounds.getMinY() + buttonBounds.getHeight() / 2;
+
+            // 动画期间以截图代替窗口
+            ImageView proxy = createSnapshot();
+
+            ObservableList<Node> windows = macBackground.getWindows().getChildren();
+            windows.set(windows.indexOf(root), proxy);
+
+            Bounds dirty = proxy.getBoundsInParent();
+
+            // 截图包含阴影，需换算到截图的坐标系
+            double x = root.getLayoutX() - proxy.getLayoutX() + buttonBounds.getMinX() + buttonBounds.getWidth() / 2;
+            double y = root.getLayoutY() - proxy.getLayoutY() + buttonBounds.getMinY() + buttonBounds.getHeight() / 2;
 
             Circle clip = new Circle(x, y, Math.max(windowBounds.getWidth(), windowBounds.getHeight()));
             clip.setFill(new RadialGradient(
@@ -139,168 +212,184 @@ public class MacWindow {
                     new Stop(0, Color.BLACK),
                     new Stop(0.9, Color.TRANSPARENT))
             );
-            root.setClip(clip);
-
-            Timeline timeline = new Timeline(new KeyFrame(Duration.seconds(0.3),
-                    new KeyValue(clip.radiusProperty(), 1, Interpolator.EASE_OUT)
-            ));
-            timeline.currentTimeProperty().addListener(it -> macBackground.repaint());
-            timeline.setOnFinished(it -> state.set(State.DESTROY));
-            timeline.play();
+            proxy.setClip(clip);
+
+            closeProxy = proxy;
+            closeClip = clip;
+            closeDirty = dirty;
+            closeRadius = clip.getRadius();
+
+            MacTween.run(0.3, MacTween.EASE_OUT, closeUpdate, closeFinish);
         });
         // endregion
 
         // region {最小化}
-        minimize.setOnAction(e -> {
-
-            if (minimizer == null) {
-
-                minimizer = new Minimizer() {
+        minimizer = new Minimizer() {
 
-                    private final Timeline timeline1;
-                    private final Timeline timeline2;
-                    private final PerspectiveTransform transform;
-                    private final double width;
-                    private final double height;
-                    private final Pane windows;
+            private final Pane windows;
 
-                    {
-                        windows = macBackground.getWindows();
+            // 动画的回调只创建一次，反复最小化与恢复时复用
+            private final DoubleConsumer update;
+            private final Runnable finish;
 
-                        timeline1 = new Timeline();
-                        timeline1.currentTimeProperty().addListener(it -> macBackground.repaint());
+            // 最小化时的截图，恢复与休眠时复用
+            private ImageView snapshot;
+            private MacGenie genie;
 
-                        timeline2 = new Timeline();
-                        timeline2.currentTimeProperty().addListener(it -> macBackground.repaint());
+            private boolean recovering;
 
-                        transform = new PerspectiveTransform();
-                        transform.setInput(dropShadow);
+            // 动画途经的区域：窗口与Dock栏子项的外包矩形
+            private Bounds dirty;
 
-                        width = root.getWidth();
-                        height = root.getHeight();
+            {
+                windows = macBackground.getWindows();
 
-                        timeline1.setOnFinished(it -> {
-
-                            timeline1.setRate(-timeline1.getRate());
+                update = fraction -> {
+                    genie.update(recovering ? 1 - fraction : fraction);
+                    macBackground.repaint(dirty);
+                };
 
-                            if (timeline1.getRate() == -1) {
+                finish = () -> {
 
-                                timeline2.play();
+                    ObservableList<Node> children = windows.getChildren();
 
-                            } else {
+                    if (recovering) {
 
-                                root.setEffect(dropShadow);
-                                postHandle();
+                        children.set(children.indexOf(genie.asNode()), root);
+                        state.set(State.SHOW);
 
-                                state.set(State.SHOW);
-                            }
-                        });
+                    } else {
 
-                        timeline2.setOnFinished(it -> {
+                        children.remove(genie.asNode());
+                        state.set(State.HIDE);
+                    }
 
-                            timeline2.setRate(-timeline2.getRate());
+                    macBackground.repaint(dirty);
+                };
+            }
 
-                            if (timeline2.getRate() == 1) {
+            private void preHandle() {
 
-                                transform.setLlx(0);
-                                transform.setLly(height);
-                                transform.setLrx(width);
-                                transform.setLry(height);
+                // 子项已滚出Dock栏时，收向窗口区域的底部中间
+                if (source.getScene() == null) {
+                    genie.setTarget(windows.getWidth() / 2, windows.getHeight());
+                } else {
+                    Bounds bounds = windows.sceneToLocal(source.localToScene(source.getBoundsInLocal()));
+                    genie.setTarget(bounds.getMinX() + bounds.getWidth() / 2, bounds.getMinY() + bounds.getHeight() / 2);
+                }
 
-                                timeline1.play();
+                dirty = genie.getDirtyBounds();
+            }
 
-                            } else {
+            @Override
+            public void minimize() {
 
-                                windows.getChildren().remove(root);
-                                postHandle();
+                MacSound.MINIMIZE.play();
 
-                                state.set(State.HIDE);
-                            }
-                        });
-                    }
+                snapshot = createSnapshot();
+                setSnapshot(snapshot);
+                preHandle();
+                genie.update(0);
 
-                    private void postHandle() {
+                // 以截图替换窗口，保持层级不变
+                ObservableList<Node> children = windows.getChildren();
+                children.set(children.indexOf(root), genie.asNode());
 
-                        timeline1.getKeyFrames().clear();
-                        timeline2.getKeyFrames().clear();
+                recovering = false;
+                MacTween.run(0.4, MacTween.LINEAR, update, finish);
+            }
 
-                        macBackground.repaint();
-                    }
+            @Override
+            public void recover() {
 
-                    private void preHandle() {
+                preHandle();
+                genie.update(1);
 
-                        Bounds bounds = windows.sceneToLocal(source.localToScene(source.getBoundsInLocal()));
+                windows.getChildren().add(genie.asNode());
 
-                        // 因为是相对于root的locale，所以要-去自身坐标，才是从父的0开始
-                        double x = bounds.getMinX() + bounds.getWidth() / 2 - root.getLayoutX();
-                        double y = bounds.getMinY() + bounds.getHeight() / 2 - root.getLayoutY();
+                recovering = true;
+                MacTween.run(0.4, MacTween.LINEAR, update, finish);
+            }
 
-                        timeline1.getKeyFrames().add(new KeyFrame(Duration.seconds(0.15),
-                                new KeyValue(transform.llxProperty(), x - 5, Interpolator.EASE_IN),
-                                new KeyValue(transform.llyProperty(), y, Interpolator.EASE_IN),
-                                new KeyValue(transform.lrxProperty(), x + 5, Interpolator.EASE_IN),
-                                new KeyValue(transform.lryProperty(), y, Interpolator.EASE_IN)
-                        ));
+            @Override
+            public Hibernation hibernate() {
+                return new Hibernation(snapshot, root.getLayoutX(), root.getLayoutY());
+            }
 
-                        timeline2.getKeyFrames().add(new KeyFrame(Duration.seconds(0.25),
-                                new KeyValue(transform.ulxProperty(), x - 10, Interpolator.EASE_OUT),
-                                new KeyValue(transform.ulyProperty(), y, Interpolator.EASE_OUT),
-                                new KeyValue(transform.urxProperty(), x + 10, Interpolator.EASE_OUT),
-                                new KeyValue(transform.uryProperty(), y, Interpolator.EASE_OUT)
-                        ));
-                    }
+            @Override
+            public void restore(Hibernation hibernation) {
+                snapshot = hibernation.snapshot;
+                setSnapshot(snapshot);
+            }
 
-                    @Override
-                    public void minimize() {
+            private void setSnapshot(ImageView snapshot) {
 
-                        AUDIO_MINIMIZE.play();
+                // 条带节点只创建一次
+                if (genie == null) {
+                    genie = new MacGenie(snapshot);
+                } else {
+                    genie.setSnapshot(snapshot);
+                }
+            }
+        };
 
-                        root.setEffect(transform);
+        minimize.setOnAction(e -> minimizer.minimize());
+        // endregion
+    }
 
-                        transform.setUlx(0);
-                        transform.setUly(0);
-                        transform.setUrx(width);
-                        transform.setUry(0);
+    public final Region asNode() {
+        return root;
+    }
 
-                        transform.setLlx(0);
-                        transform.setLly(height);
-                        transform.setLrx(width);
-                        transform.setLry(height);
+    /**
+     * 窗口连同阴影的截图，已放置在窗口当前的位置上
+     */
+    final ImageView createSnapshot() {
 
-                        preHandle();
+        double scale = MacOSApp.getRenderScale();
 
-                        timeline1.play();
-                    }
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        parameters.setTransform(Transform.scale(scale, scale));
 
-                    @Override
-                    public void recover() {
+        Bounds bounds = root.getBoundsInParent();
 
-                        windows.getChildren().add(root);
+        ImageView imageView = new ImageView(root.snapshot(parameters, null));
+        imageView.setFitWidth(bounds.getWidth());
+        imageView.setFitHeight(bounds.getHeight());
+        imageView.setLayoutX(bounds.getMinX());
+        imageView.setLayoutY(bounds.getMinY());
+        imageView.setManaged(false);
+        imageView.setMouseTransparent(true);
 
+        return imageView;
+    }
 
-                        transform.setUlx(0);
-                        transform.setUly(0);
-                        transform.setUrx(width);
-                        transform.setUry(0);
+    public final void recover() {
+        minimizer.recover();
+    }
 
-                        preHandle();
+    /**
+     * 休眠：返回恢复所需的最少信息，之后不再使用此窗口；仅可在最小化后调用
+     */
+    final Hibernation hibernate() {
 
-                        timeline2.play();
-                    }
-                };
-            }
+        if (state.get() != State.HIDE) {
+            throw new IllegalStateException("window is not hidden: " + state.get());
+        }
 
-            minimizer.minimize();
-        });
-        // endregion
+        return minimizer.hibernate();
     }
 
-    public final Region asNode() {
-        return root;
-    }
+    /**
+     * 以休眠前的截图与位置，将新建的窗口置为最小化状态，之后可调用{@link #recover()}
+     */
+    final void restore(Hibernation hibernation) {
 
-    public final void recover() {
-        minimizer.recover();
+        root.setLayoutX(hibernation.x);
+        root.setLayoutY(hibernation.y);
+        minimizer.restore(hibernation);
+        state.set(State.HIDE);
     }
 
     public State getState() {
@@ -332,6 +421,27 @@ public class MacWindow {
         void minimize();
 
         void recover();
+
+        Hibernation hibernate();
+
+        void restore(Hibernation hibernation);
+    }
+
+    /**
+     * 休眠的窗口：最小化时的截图及窗口的位置
+     */
+    static final class Hibernation {
+
+        private final ImageView snapshot;
+
+        private final double x;
+        private final double y;
+
+        private Hibernation(ImageView snapshot, double x, double y) {
+            this.snapshot = snapshot;
+            this.x = x;
+            this.y = y;
+        }
     }
 
     public enum State {
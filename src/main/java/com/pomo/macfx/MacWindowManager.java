@@ -0,0 +1,326 @@
+/*
+ * mac-fx - use javafx to simulate macOS
+ * Copyright © 2022 Mr.Po (ldd_live@foxmail.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.pomo.macfx;
+
+import javafx.beans.property.ReadOnlyProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.geometry.Bounds;
+import javafx.scene.Node;
+import javafx.scene.layout.Pane;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <h2>窗口管理</h2>
+ * <p>管理窗口的层级：已在最上层时不再调整子节点的顺序。</p>
+ * <p>窗口（含阴影）被上方窗口的主体完全遮挡时不再渲染，直至重新露出。窗口的范围登记在空间索引中，
+ * 某个窗口移动后，只重新检查与其新旧范围相交的窗口，每个窗口也只与可能遮挡它的窗口比较。</p>
+ * <p>仅可在FX线程中使用。</p>
+ *
+ * @author Mr.Po, ldd_live@foxmail.com
+ */
+final class MacWindowManager {
+
+    private final static String WINDOW_CLASS = "window";
+
+    // 窗口主体的圆角处透明，作为遮挡物时需向内收缩
+    private final static double CORNER = 10;
+
+    private final static double CELL_SIZE = 256;
+
+    private final Pane windows;
+
+    private final MacSpatialGrid<Node> grid;
+
+    // 各窗口在子节点中的位置，越大越靠上
+    private final Map<Node, Integer> zIndex;
+
+    // 暂时隐藏的窗口，如拖动期间被截图替代的
+    private final Set<Node> suppressed;
+
+    private final Set<Node> occluded;
+
+    private final ChangeListener<Bounds> boundsListener;
+
+    // 查询结果，复用
+    private final List<Node> candidates;
+    private final List<Node> occluders;
+
+    // 矩形相减的工作区：每4个数为一个矩形的minX、minY、maxX、maxY
+    private double[] pieces = new double[64];
+    private double[] scratch = new double[64];
+
+    public MacWindowManager(Pane windows) {
+
+        this.windows = windows;
+
+        grid = new MacSpatialGrid<>(CELL_SIZE);
+        zIndex = new IdentityHashMap<>();
+
+        suppressed = new HashSet<>();
+        occluded = new HashSet<>();
+
+        candidates = new ArrayList<>();
+        occluders = new ArrayList<>();
+
+        boundsListener = (observable, oldValue, newValue) -> {
+
+            Node node = (Node) ((ReadOnlyProperty<?>) observable).getBean();
+
+            grid.put(node, newValue.getMinX(), newValue.getMinY(), newValue.getMaxX(), newValue.getMaxY());
+
+            // 只有新旧范围内的窗口可能受影响
+            update(Math.min(oldValue.getMinX(), newValue.getMinX()), Math.min(oldValue.getMinY(), newValue.getMinY()),
+                    Math.max(oldValue.getMaxX(), newValue.getMaxX()), Math.max(oldValue.getMaxY(), newValue.getMaxY()));
+        };
+
+        windows.getChildren().addListener((ListChangeListener<Node>) change -> {
+
+            while (change.next()) {
+
+                for (Node node : change.getRemoved()) {
+
+                    // 仅调整了顺序
+                    if (node.getParent() == windows) {
+                        continue;
+                    }
+
+                    node.boundsInParentProperty().removeListener(boundsListener);
+                    grid.remove(node);
+
+                    // 移出的窗口恢复原状，如拖动期间被关闭、最小化的，不再隐藏
+                    boolean hidden = suppressed.remove(node);
+                    if (occluded.remove(node) || hidden) {
+                        node.setVisible(true);
+                    }
+                }
+
+                for (Node node : change.getAddedSubList()) {
+
+                    if (isWindow(node) && !grid.contains(node)) {
+
+                        Bounds bounds = node.getBoundsInParent();
+                        grid.put(node, bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+
+                        node.boundsInParentProperty().addListener(boundsListener);
+                    }
+                }
+            }
+
+            // 层级变化，全部重新检查
+            zIndex.clear();
+            ObservableList<Node> children = windows.getChildren();
+            for (int i = 0; i < children.size(); i++) {
+                if (isWindow(children.get(i))) {
+                    zIndex.put(children.get(i), i);
+                }
+            }
+
+            for (Node node : zIndex.keySet()) {
+                updateWindow(node);
+            }
+        });
+    }
+
+    /**
+     * 置于最上层，已在最上层时不做任何事
+     */
+    public void toFront(Node window) {
+
+        ObservableList<Node> children = windows.getChildren();
+
+        if (children.isEmpty() || children.get(children.size() - 1) == window) {
+            return;
+        }
+
+        window.toFront();
+    }
+
+    /**
+     * 暂时隐藏窗口，期间它也不再遮挡其他窗口
+     */
+    public void setSuppressed(Node window, boolean value) {
+
+        if (value ? suppressed.add(window) : suppressed.remove(window)) {
+
+            Bounds bounds = window.getBoundsInParent();
+            update(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+        }
+    }
+
+    public int getWindowCount() {
+        return grid.size();
+    }
+
+    public int getOccludedCount() {
+        return occluded.size();
+    }
+
+    /**
+     * 重新检查与指定区域相交的窗口
+     */
+    private void update(double minX, double minY, double maxX, double maxY) {
+
+        candidates.clear();
+        grid.query(minX, minY, maxX, maxY, candidates);
+
+        for (int i = 0; i < candidates.size(); i++) {
+            updateWindow(candidates.get(i));
+        }
+
+        candidates.clear();
+    }
+
+    private void updateWindow(Node node) {
+
+        boolean hidden = suppressed.contains(node);
+        boolean covered = !hidden && isCovered(node);
+
+        if (covered) {
+            occluded.add(node);
+        } else {
+            occluded.remove(node);
+        }
+
+        node.setVisible(!covered && !hidden);
+    }
+
+    /**
+     * 窗口的范围是否被上方窗口的主体完全覆盖；被遮挡的窗口其主体同样不透明，仍可作为遮挡物
+     */
+    private boolean isCovered(Node node) {
+
+        Bounds bounds = node.getBoundsInParent();
+        int z = zIndex(node);
+
+        occluders.clear();
+        grid.query(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(), occluders);
+
+        int count = 1;
+        pieces[0] = bounds.getMinX();
+        pieces[1] = bounds.getMinY();
+        pieces[2] = bounds.getMaxX();
+        pieces[3] = bounds.getMaxY();
+
+        for (int i = 0; i < occluders.size() && count > 0; i++) {
+
+            Node above = occluders.get(i);
+
+            if (zIndex(above) <= z || suppressed.contains(above)) {
+                continue;
+            }
+
+            // 窗口主体，不含阴影
+            Bounds body = above.getLayoutBounds();
+            double minX = above.getLayoutX() + body.getMinX() + CORNER;
+            double minY = above.getLayoutY() + body.getMinY() + CORNER;
+            double maxX = above.getLayoutX() + body.getMaxX() - CORNER;
+            double maxY = above.getLayoutY() + body.getMaxY() - CORNER;
+
+            count = subtract(count, minX, minY, maxX, maxY);
+        }
+
+        occluders.clear();
+
+        return count == 0;
+    }
+
+    private int zIndex(Node node) {
+
+        Integer index = zIndex.get(node);
+
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * 从剩余的各矩形中减去指定矩形，返回剩余矩形的数量
+     */
+    private int subtract(int count, double minX, double minY, double maxX, double maxY) {
+
+        if (minX >= maxX || minY >= maxY) {
+            return count;
+        }
+
+        int result = 0;
+
+        for (int i = 0; i < count; i++) {
+
+            double x0 = pieces[i * 4];
+            double y0 = pieces[i * 4 + 1];
+            double x1 = pieces[i * 4 + 2];
+            double y1 = pieces[i * 4 + 3];
+
+            // 不相交，原样保留
+            if (minX >= x1 || maxX <= x0 || minY >= y1 || maxY <= y0) {
+                result = put(result, x0, y0, x1, y1);
+                continue;
+            }
+
+            // 上、下两条整宽，左、右两条夹在中间
+            if (minY > y0) {
+                result = put(result, x0, y0, x1, minY);
+            }
+            if (maxY < y1) {
+                result = put(result, x0, maxY, x1, y1);
+            }
+
+            double top = Math.max(y0, minY);
+            double bottom = Math.min(y1, maxY);
+
+            if (minX > x0) {
+                result = put(result, x0, top, minX, bottom);
+            }
+            if (maxX < x1) {
+                result = put(result, maxX, top, x1, bottom);
+            }
+        }
+
+        double[] temp = pieces;
+        pieces = scratch;
+        scratch = temp;
+
+        return result;
+    }
+
+    private int put(int index, double minX, double minY, double maxX, double maxY) {
+
+        if (scratch.length < (index + 1) * 4) {
+            double[] grown = new double[scratch.length * 2];
+            System.arraycopy(scratch, 0, grown, 0, scratch.length);
+            scratch = grown;
+        }
+
+        scratch[index * 4] = minX;
+        scratch[index * 4 + 1] = minY;
+        scratch[index * 4 + 2] = maxX;
+        scratch[index * 4 + 3] = maxY;
+
+        return index + 1;
+    }
+
+    private static boolean isWindow(Node node) {
+        return node.getStyleClass().contains(WINDOW_CLASS);
+    }
+}